@@ -1,10 +1,37 @@
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Test;
 
 import chess.ChessController;
 import chess.ChessModel;
+import engine.Evaluation;
+import engine.KpkBitbase;
+import engine.MoveGen;
+import engine.Moves;
+import engine.OpeningBook;
+import engine.ParallelPerft;
+import engine.Perft;
+import engine.Position;
+import engine.Search;
+import engine.Tablebase;
+import engine.TablebaseGenerator;
+import engine.TranspositionTable;
+import engine.Zobrist;
+import enums.ChessColor;
+import pieces.King;
+import pieces.Piece;
+import pieces.Rook;
 
 /**
  * Testing everything that's not gui or thread
@@ -246,6 +273,9 @@ public class ChessModelTesting {
 		assertFalse(controller1.isChecked());
 		makeMoves(controller1, controller2, "BLACK", "e6", "d7");
 		assertFalse(controller2.isChecked());
+		// The evaluation kept through the promotion matches the board
+		assertTrue(Evaluation.evaluate(model1.getPosition())
+				== Evaluation.compute(model1.getPosition()));
 
 		makeMoves(controller1, controller2, "WHITE", "e4", "e5");
 		makeMoves(controller1, controller2, "BLACK", "d7", "c8");
@@ -285,6 +315,637 @@ public class ChessModelTesting {
 		model1.saveGame("test");
 	}
 
+	/**
+	 * Testing the bitboard position stays in sync with the board
+	 */
+	@Test
+	void test_position_sync() {
+		ChessModel model = new ChessModel();
+		ChessController controller = new ChessController(model);
+		controller.setColor(true); // default controller is white
+
+		controller.makeAMove("WHITE", "e2", "e4");
+		controller.makeAMove("BLACK", "a7", "a6");
+		controller.makeAMove("WHITE", "e4", "e5");
+		controller.makeAMove("BLACK", "d7", "d5");
+		assertTrue(model.getPosition().epSquare() == Position.square(5, 3));
+		controller.makeAMove("WHITE", "e5", "d6");
+		controller.makeAMove("BLACK", "a6", "a5");
+		controller.makeAMove("WHITE", "g1", "f3");
+		controller.makeAMove("BLACK", "a5", "a4");
+		controller.makeAMove("WHITE", "f1", "e2");
+		controller.makeAMove("BLACK", "b7", "b6");
+		// castle
+		controller.makeAMove("WHITE", "e1", "g1");
+		assertSynced(model);
+		assertTrue(model.getPosition().sideToMove() == Position.BLACK);
+		assertTrue(model.getPosition().castlingRights() == (Position.BLACK_OO | Position.BLACK_OOO));
+
+		// Only a king and rook of the home side can castle
+		Piece[][] board = new Piece[8][8];
+		board[0][4] = new King(true, 0, 4);
+		board[0][7] = new Rook(false, 0, 7);
+		board[0][0] = new Rook(true, 0, 0);
+		assertTrue(Position.castlingRights(board) == Position.WHITE_OOO);
+		// A side without a king isn't in check
+		assertFalse(Position.fromFen("8/8/8/8/8/8/8/K6R b - - 0 1").inCheck());
+	}
+
+	/**
+	 * Testing make and unmake restore the position
+	 */
+	@Test
+	void test_make_unmake() {
+		ChessModel model = new ChessModel();
+		ChessController controller = new ChessController(model);
+		controller.setColor(true); // default controller is white
+
+		controller.makeAMove("WHITE", "e2", "e4");
+		controller.makeAMove("BLACK", "d7", "d5");
+		controller.makeAMove("WHITE", "e4", "e5");
+		controller.makeAMove("BLACK", "c8", "e6");
+		controller.makeAMove("WHITE", "g1", "f3");
+		controller.makeAMove("BLACK", "b8", "c6");
+		controller.makeAMove("WHITE", "f1", "c4");
+		controller.makeAMove("BLACK", "f7", "f5");
+
+		Position pos = model.getPosition().copy();
+		int[] moves = new int[MoveGen.MAX_MOVES];
+		int n = MoveGen.generate(pos, moves);
+		// castle, en passant and capture are all in there
+		assertTrue(n == 31);
+		for (int i = 0; i < n; i++) {
+			pos.make(moves[i]);
+			assertTrue(pos.sideToMove() == Position.BLACK);
+			assertTrue(pos.hash() == Zobrist.compute(pos));
+			pos.unmake();
+			assertTrue(pos.hash() == model.getHash());
+			assertSynced(model, pos);
+			assertTrue(pos.castlingRights() == model.getPosition().castlingRights());
+			assertTrue(pos.epSquare() == Position.square(5, 5));
+		}
+		assertTrue(pos.ply() == 0);
+	}
+
+	/**
+	 * Testing transpositions get the same hash
+	 */
+	@Test
+	void test_hash() {
+		ChessModel model1 = new ChessModel();
+		ChessController controller1 = new ChessController(model1);
+		controller1.setColor(true); // default controller is white
+
+		ChessModel model2 = new ChessModel();
+		ChessController controller2 = new ChessController(model2);
+		controller2.setColor(true); // default controller is white
+
+		assertTrue(model1.getHash() == model2.getHash());
+		controller1.makeAMove("WHITE", "g1", "f3");
+		controller1.makeAMove("BLACK", "g8", "f6");
+		controller1.makeAMove("WHITE", "b1", "c3");
+		controller2.makeAMove("WHITE", "b1", "c3");
+		controller2.makeAMove("BLACK", "g8", "f6");
+		controller2.makeAMove("WHITE", "g1", "f3");
+		assertTrue(model1.getHash() == model2.getHash());
+		assertTrue(model1.getHash() == Zobrist.compute(model1.getPosition()));
+
+		// Same pieces, but white lost the right to castle
+		controller1.makeAMove("BLACK", "b8", "c6");
+		controller1.makeAMove("WHITE", "h1", "g1");
+		controller1.makeAMove("BLACK", "c6", "b8");
+		controller1.makeAMove("WHITE", "g1", "h1");
+		controller2.makeAMove("BLACK", "b8", "c6");
+		controller2.makeAMove("WHITE", "c3", "b1");
+		controller2.makeAMove("BLACK", "c6", "b8");
+		controller2.makeAMove("WHITE", "b1", "c3");
+		assertFalse(model1.getHash() == model2.getHash());
+		assertTrue(model1.getHash() == Zobrist.compute(model1.getPosition()));
+	}
+
+	/**
+	 * Testing the move generator against the reference perft counts
+	 */
+	@Test
+	void test_perft() {
+		Perft perft = new Perft();
+		for (int i = 0; i < Perft.SUITE.length; i++) {
+			Position pos = Position.fromFen(Perft.SUITE[i]);
+			long hash = pos.hash();
+			// Shallow depths only, the full suite is run by Perft.main
+			for (int depth = 1; depth <= 3; depth++)
+				assertTrue(perft.perft(pos, depth) == Perft.SUITE_COUNTS[i][depth - 1]);
+			assertTrue(pos.hash() == hash && pos.ply() == 0);
+		}
+		// The board built from the model matches the FEN of the same position
+		assertTrue(new ChessModel().getHash() == Position.fromFen(Perft.START).hash());
+	}
+
+	/**
+	 * Testing parallel perft counts the same as perft
+	 */
+	@Test
+	void test_parallel_perft() {
+		Position pos = Position.fromFen(Perft.SUITE[1]);
+		long expected = Perft.SUITE_COUNTS[1][2];
+		ParallelPerft perft = new ParallelPerft(4, 0, 1);
+		assertTrue(perft.perft(pos, 3) == expected);
+		perft.shutdown();
+		// Split two plies, with a shared hash table
+		perft = new ParallelPerft(4, 1, 2);
+		assertTrue(perft.perft(pos, 3) == expected);
+		assertTrue(perft.perft(pos, 3) == expected);
+		perft.shutdown();
+		assertTrue(pos.ply() == 0);
+	}
+
+	/**
+	 * Testing the search finds a mate and wins material
+	 */
+	@Test
+	void test_search() {
+		Search search = new Search(3, Search.DEFAULT_NODES);
+		int move = search.chooseMove(Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"));
+		assertTrue(Moves.toString(move).equals("a1a8"));
+		assertTrue(search.score() == Search.MATE - 1);
+		move = search.chooseMove(Position.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1"));
+		assertTrue(Moves.toString(move).equals("d2d5"));
+
+		// Iterative deepening stops at the deadline with a finished depth. Without
+		// one it would go on to MAX_DEPTH, far beyond the generous margin here
+		search = new Search(Search.MAX_DEPTH, Long.MAX_VALUE);
+		long start = System.nanoTime();
+		move = search.chooseMove(Position.fromFen(Perft.SUITE[1]), 200_000_000L);
+		long elapsed = System.nanoTime() - start;
+		assertTrue(move != Moves.NONE && search.completedDepth() >= 1);
+		assertTrue(search.completedDepth() < Search.MAX_DEPTH);
+		assertTrue(elapsed < 10_000_000_000L);
+
+		// Lazy SMP agrees on a forced line
+		search.setThreads(3);
+		move = search.chooseMove(Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"), 200_000_000L);
+		assertTrue(Moves.toString(move).equals("a1a8"));
+		assertTrue(search.nodes() > 0);
+		search.shutdown();
+
+		// The AI seat plays a move on the board
+		ChessModel model = new ChessModel();
+		ChessController controller = new ChessController(model);
+		controller.setColor(false);
+		controller.setMoveTime(100);
+		controller.makeAMove("WHITE", "e2", "e4");
+		long hash = model.getHash();
+		controller.makeRandomMove();
+		assertFalse(model.getHash() == hash);
+		assertTrue(model.getPosition().sideToMove() == Position.WHITE);
+		assertSynced(model);
+	}
+
+	/**
+	 * Testing the captures generator finds the same captures as the full one
+	 */
+	@Test
+	void test_captures() {
+		int[] all = new int[MoveGen.MAX_MOVES];
+		int[] captures = new int[MoveGen.MAX_MOVES];
+		for (String fen : Perft.SUITE) {
+			Position pos = Position.fromFen(fen);
+			int n = MoveGen.generate(pos, all);
+			int expected = 0;
+			for (int i = 0; i < n; i++) {
+				int to = Moves.to(all[i]);
+				boolean capture = pos.pieceOn(to) != Position.EMPTY
+						|| Moves.kind(all[i]) == Moves.EN_PASSANT;
+				boolean queening = Moves.kind(all[i]) == Moves.PROMOTION
+						&& Moves.promotionType(all[i]) == Position.QUEEN;
+				boolean underPromotion = Moves.kind(all[i]) == Moves.PROMOTION && !queening;
+				if ((capture && !underPromotion) || queening) expected++;
+			}
+			assertTrue(MoveGen.generateCaptures(pos, captures) == expected);
+			// Captures and quiets split the moves between them
+			assertTrue(MoveGen.generateQuiets(pos, captures) == n - expected);
+		}
+
+		// The quiescence search sees the queen is lost to the pawn recapture
+		Search search = new Search(1, Search.DEFAULT_NODES);
+		int move = search.chooseMove(Position.fromFen("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1"));
+		assertFalse(Moves.toString(move).equals("d1d5"));
+	}
+
+	/**
+	 * Testing the move picker puts the cutoff move first
+	 */
+	@Test
+	void test_move_ordering() {
+		// Hash move, captures, killers and history make the first move cut off about
+		// 97% of the time at this fixed depth, so the count is the same on any machine;
+		// 0.8 leaves room for tuning while catching broken ordering
+		for (String fen : Perft.SUITE) {
+			Search search = new Search(5, Long.MAX_VALUE);
+			search.chooseMove(Position.fromFen(fen));
+			assertTrue(search.firstMoveCutoffRate() > 0.8);
+		}
+	}
+
+	/**
+	 * Testing static exchange evaluation
+	 */
+	@Test
+	void test_see() {
+		// Undefended pawn
+		Position pos = Position.fromFen("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+		assertTrue(pos.see(Moves.make(4, 36, Moves.NORMAL)) == 100);
+		// Knight takes a pawn, the x-rayed defenders win the exchange
+		pos = Position.fromFen("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+		assertTrue(pos.see(Moves.make(19, 36, Moves.NORMAL)) == 100 - 320);
+		// Pawn takes a defended knight
+		pos = Position.fromFen("4k3/8/2p5/3n4/4P3/8/8/4K3 w - - 0 1");
+		assertTrue(pos.see(Moves.make(28, 35, Moves.NORMAL)) == 320 - 100);
+		// Queen takes a pawn defended by a pawn
+		pos = Position.fromFen("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1");
+		assertTrue(pos.see(Moves.make(3, 35, Moves.NORMAL)) == 100 - 900);
+		// The king can't recapture while the rook still guards the square
+		pos = Position.fromFen("8/8/4k3/4p3/8/5N2/8/4R1K1 w - - 0 1");
+		assertTrue(pos.see(Moves.make(21, 36, Moves.NORMAL)) == 100);
+		pos = Position.fromFen("8/8/4k3/4p3/8/5N2/8/6K1 w - - 0 1");
+		assertTrue(pos.see(Moves.make(21, 36, Moves.NORMAL)) == 100 - 320);
+	}
+
+	/**
+	 * Testing the incremental evaluation matches one from scratch
+	 */
+	@Test
+	void test_evaluation() {
+		assertTrue(Evaluation.evaluate(new ChessModel().getPosition()) == 0);
+		// Up a queen, better for white whoever is to move
+		Position pos = Position.fromFen("4k3/8/8/8/8/8/8/3QK3 b - - 0 1");
+		assertTrue(Evaluation.evaluate(pos) < -800);
+		assertTrue(Evaluation.compute(pos) == Evaluation.evaluate(pos));
+
+		// Random games with captures, castling and promotions, then back
+		Random random = new Random(19);
+		int[] moves = new int[MoveGen.MAX_MOVES];
+		for (String fen : Perft.SUITE) {
+			pos = Position.fromFen(fen);
+			int start = Evaluation.evaluate(pos);
+			for (int ply = 0; ply < 60; ply++) {
+				int count = MoveGen.generate(pos, moves);
+				if (count == 0) break;
+				pos.make(moves[random.nextInt(count)]);
+				assertTrue(Evaluation.evaluate(pos) == Evaluation.compute(pos));
+				assertTrue(pos.pawnHash() == Zobrist.computePawns(pos));
+			}
+			while (pos.ply() > 0) pos.unmake();
+			assertTrue(Evaluation.evaluate(pos) == start);
+		}
+	}
+
+	/**
+	 * Testing the pawn structure terms and their hash
+	 */
+	@Test
+	void test_pawn_structure() {
+		// Doubled, isolated pawns are worth less than two connected passers
+		Position doubled = Position.fromFen("4k3/8/8/8/8/P7/P7/4K3 w - - 0 1");
+		Position connected = Position.fromFen("4k3/8/8/8/8/8/PP6/4K3 w - - 0 1");
+		assertTrue(Evaluation.evaluate(doubled) < Evaluation.evaluate(connected));
+		// Only pawns change the pawn hash
+		Position pos = Position.fromFen(Perft.START);
+		long pawns = pos.pawnHash();
+		pos.make(Moves.make(6, 21, Moves.NORMAL));
+		assertTrue(pos.pawnHash() == pawns);
+		pos.make(Moves.make(52, 36, Moves.NORMAL));
+		assertFalse(pos.pawnHash() == pawns);
+		pos.unmake();
+		assertTrue(pos.pawnHash() == pawns);
+	}
+
+	/**
+	 * Testing the opening book finds weighted, legal moves
+	 */
+	@Test
+	void test_opening_book() throws IOException {
+		Position start = Position.fromFen(Perft.START);
+		// The published test positions
+		assertTrue(OpeningBook.key(start) == 0x463b96181691fc9cL);
+		Position played = Position.fromFen(Perft.START);
+		int[][] line = {{12, 28}, {51, 35}, {28, 36}, {53, 37}, {4, 12}, {60, 53}};
+		long[] expected = {0x823c9b50fd114196L, 0x0756b94461c50fb0L, 0x662fafb965db29d4L,
+				0x22a48b5a8e47ff78L, 0x652a607ca3f242c1L, 0x00fdd303c946bdd9L};
+		for (int i = 0; i < line.length; i++) {
+			played.make(Moves.make(line[i][0], line[i][1], Moves.NORMAL));
+			assertTrue(OpeningBook.key(played) == expected[i]);
+		}
+		assertTrue(OpeningBook.key(Position.fromFen("rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4"))
+				== 0x5c3f9b829b279560L);
+		Position castles = Position.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		long[] keys = {OpeningBook.key(start), OpeningBook.key(start), OpeningBook.key(start),
+				OpeningBook.key(castles)};
+		// e2e4 three times as likely as d2d4, e2e5 isn't legal, castling is king takes rook
+		int[] moves = {12 << 6 | 28, 11 << 6 | 27, 12 << 6 | 36, 4 << 6 | 7};
+		int[] weights = {3, 1, 5, 1};
+		Integer[] order = {0, 1, 2, 3};
+		java.util.Arrays.sort(order, (a, b) -> Long.compareUnsigned(keys[a], keys[b]));
+		ByteBuffer bytes = ByteBuffer.allocate(order.length * OpeningBook.ENTRY_BYTES);
+		for (int i : order)
+			bytes.putLong(keys[i]).putShort((short) moves[i]).putShort((short) weights[i]).putInt(0);
+		Path file = Files.createTempFile("book", ".bin");
+		Files.write(file, bytes.array());
+
+		OpeningBook book = new OpeningBook(file);
+		assertTrue(book.entries() == 4);
+		Random random = new Random(21);
+		int e4 = 0;
+		for (int i = 0; i < 400; i++) {
+			int move = book.probe(start, random);
+			assertTrue(move == Moves.make(12, 28, Moves.NORMAL) || move == Moves.make(11, 27, Moves.NORMAL));
+			if (Moves.to(move) == 28) e4++;
+		}
+		assertTrue(e4 > 250 && e4 < 350);
+		assertTrue(book.probe(castles, random) == Moves.make(4, 6, Moves.CASTLE));
+		assertTrue(book.probe(Position.fromFen(Perft.SUITE[1]), random) == Moves.NONE);
+
+		// The AI seat plays from the book
+		ChessModel model = new ChessModel();
+		ChessController controller = new ChessController(model);
+		controller.setColor(true);
+		controller.setBook(book);
+		controller.makeRandomMove();
+		assertTrue(model.getPiece(3, 4) != null || model.getPiece(3, 3) != null);
+		Files.delete(file);
+	}
+
+	/**
+	 * Testing generated tablebases find mates and draws, and end the game
+	 */
+	@Test
+	void test_tablebase() throws IOException {
+		Path dir = Files.createTempDirectory("tablebases");
+		TablebaseGenerator generator = new TablebaseGenerator(dir, 2);
+		List<String> built = new ArrayList<>();
+		generator.setProgress((name, size, nanos) -> built.add(name));
+		generator.generate("KRvK");
+		generator.shutdown();
+		assertTrue(built.equals(List.of("KvK", "KRvK")));
+		Tablebase tablebase = new Tablebase(dir);
+		// KvK comes with it, a rook capture leads there
+		assertTrue(tablebase.tables() == 2);
+
+		Position mateInOne = Position.fromFen("k7/8/1K6/8/8/8/8/7R w - - 0 1");
+		assertTrue(tablebase.wdl(mateInOne) == Tablebase.WIN);
+		assertTrue(tablebase.distance(mateInOne) == 1);
+		int rh8 = Moves.make(7, 63, Moves.NORMAL);
+		assertTrue(tablebase.bestMove(mateInOne) == rh8);
+		// The same with the colors swapped
+		Position flipped = Position.fromFen("7r/8/8/8/8/1k6/8/K7 b - - 0 1");
+		assertTrue(tablebase.wdl(flipped) == Tablebase.WIN);
+		assertTrue(tablebase.distance(flipped) == 1);
+		Position mated = Position.fromFen("k6R/8/1K6/8/8/8/8/8 b - - 0 1");
+		assertTrue(tablebase.wdl(mated) == Tablebase.LOSS);
+		assertTrue(tablebase.distance(mated) == 0);
+		// Black takes the loose rook
+		assertTrue(tablebase.wdl(Position.fromFen("8/8/8/8/8/2k5/1R6/7K b - - 0 1")) == Tablebase.DRAW);
+		assertTrue(tablebase.wdl(Position.fromFen("8/8/8/8/8/2k5/8/7K w - - 0 1")) == Tablebase.DRAW);
+		assertTrue(tablebase.wdl(Position.fromFen(Perft.START)) == Tablebase.UNKNOWN);
+
+		Search search = new Search();
+		search.setTablebase(tablebase);
+		assertTrue(search.chooseMove(mateInOne) == rh8);
+		assertTrue(search.score() == Search.MATE - 1);
+
+		// The game ends on the mate, not on taking the king
+		ChessModel model = new ChessModel();
+		ChessController controller = new ChessController(model);
+		controller.setTablebase(tablebase);
+		assertFalse(model.isGameOver());
+		Piece[][] board = model.getBoard();
+		for (Piece[] row : board)
+			java.util.Arrays.fill(row, null);
+		model.blackKing = new King(false, 7, 0);
+		model.whiteKing = new King(true, 5, 1);
+		board[7][0] = model.blackKing;
+		board[5][1] = model.whiteKing;
+		board[0][7] = new Rook(true, 0, 7);
+		model.loadGame(model);
+		assertFalse(model.isGameOver());
+		controller.setColor(true);
+		controller.makeRandomMove();
+		assertTrue(model.getPiece(7, 7) instanceof Rook);
+		assertTrue(model.isGameOver());
+		assertTrue(model.isWinner(ChessColor.WHITE));
+		assertFalse(model.isWinner(ChessColor.BLACK));
+		assertFalse(model.isDraw());
+
+		for (String name : new String[] {"KRvK", "KvK"}) {
+			Files.delete(dir.resolve(name + ".dtm"));
+			Files.delete(dir.resolve(name + ".wdl"));
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 * Testing the KPK bitbase knows the textbook endings and scores them
+	 */
+	@Test
+	void test_kpk_bitbase() {
+		assertTrue(KpkBitbase.isLoaded());
+		// The king on the sixth in front of its pawn wins, whoever moves
+		Position sixth = Position.fromFen("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1");
+		assertTrue(KpkBitbase.isWin(sixth));
+		assertTrue(KpkBitbase.isWin(Position.fromFen("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1")));
+		assertTrue(Evaluation.evaluate(sixth) > 700);
+		// Opposition: a draw with white to move, a win with black to move
+		Position opposition = Position.fromFen("8/4k3/8/4K3/4P3/8/8/8 w - - 0 1");
+		assertFalse(KpkBitbase.isWin(opposition));
+		assertTrue(Evaluation.evaluate(opposition) == 0);
+		assertTrue(KpkBitbase.isWin(Position.fromFen("8/4k3/8/4K3/4P3/8/8/8 b - - 0 1")));
+		// The same with the colors swapped, and on the other wing
+		Position black = Position.fromFen("8/8/8/8/4p3/4k3/8/4K3 w - - 0 1");
+		assertTrue(KpkBitbase.isWin(black));
+		assertTrue(Evaluation.evaluate(black) < -700);
+		assertTrue(KpkBitbase.isWin(Position.fromFen("3k4/8/3K4/3P4/8/8/8/8 w - - 0 1")));
+		// A rook pawn with the king in the corner, and a pawn taken
+		Position corner = Position.fromFen("k7/8/8/8/8/8/P7/7K w - - 0 1");
+		assertFalse(KpkBitbase.isWin(corner));
+		assertTrue(Evaluation.evaluate(corner) == 0);
+		assertTrue(Evaluation.compute(corner) == 0);
+		assertFalse(KpkBitbase.isWin(Position.fromFen("8/8/8/8/8/8/kP6/7K b - - 0 1")));
+	}
+
+	/**
+	 * Testing pondering runs past the deadline until the opponent moves
+	 */
+	@Test
+	void test_ponder() throws Exception {
+		// A fixed depth, so there's a reply in the table however slow the machine
+		Search search = new Search(4, Long.MAX_VALUE);
+		Position pos = Position.fromFen(Perft.SUITE[1]);
+		pos.make(search.chooseMove(pos));
+		int reply = search.expectedReply(pos);
+		assertTrue(reply != Moves.NONE);
+		pos.make(reply);
+		search.setDepth(Search.MAX_DEPTH);
+
+		// A hit: the search ignores its 100 ms until the reply comes, then takes them.
+		// Pondering without a depth limit would otherwise never end
+		search.ponder(100_000_000L);
+		FutureTask<Integer> hit = new FutureTask<>(() -> search.chooseMove(pos, 100_000_000L));
+		new Thread(hit).start();
+		Thread.sleep(300);
+		assertFalse(hit.isDone());
+		search.ponderhit();
+		int move = hit.get(30, TimeUnit.SECONDS);
+		assertTrue(move != Moves.NONE && search.completedDepth() >= 1);
+
+		// A miss ends on stop
+		search.ponder(100_000_000L);
+		FutureTask<Integer> miss = new FutureTask<>(() -> search.chooseMove(pos, 100_000_000L));
+		new Thread(miss).start();
+		Thread.sleep(200);
+		search.stop();
+		assertTrue(miss.get(30, TimeUnit.SECONDS) != Moves.NONE);
+
+		// Even when the stop comes before the search starts: it plays the first depth
+		search.ponder(100_000_000L);
+		search.stop();
+		assertTrue(search.chooseMove(pos, 100_000_000L) != Moves.NONE);
+		assertTrue(search.completedDepth() <= 1);
+	}
+
+	/**
+	 * Testing null moves, late-move reductions and check extensions
+	 * keep the search right and make it smaller
+	 */
+	@Test
+	void test_selective_search() {
+		Position pos = Position.fromFen(Perft.SUITE[1]);
+		long hash = pos.hash();
+		pos.makeNull();
+		assertTrue(pos.sideToMove() == Position.BLACK && pos.lastMoveWasNull());
+		assertFalse(pos.isRepetition());
+		pos.unmake();
+		assertTrue(pos.hash() == hash && pos.sideToMove() == Position.WHITE);
+
+		// Every combination still finds the mate and the free queen
+		for (int features = 0; features < 8; features++) {
+			Search search = selective(new Search(4, Long.MAX_VALUE), features);
+			int move = search.chooseMove(Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"));
+			assertTrue(Moves.toString(move).equals("a1a8"));
+			move = search.chooseMove(Position.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1"));
+			assertTrue(Moves.toString(move).equals("d2d5"));
+		}
+		Search none = selective(new Search(5, Long.MAX_VALUE), 0);
+		Search all = selective(new Search(5, Long.MAX_VALUE), 7);
+		none.chooseMove(Position.fromFen(Perft.SUITE[1]));
+		all.chooseMove(Position.fromFen(Perft.SUITE[1]));
+		assertTrue(all.nodes() < none.nodes());
+
+		// A reduced move that beats alpha gets its exact score: here castling, a late
+		// quiet move, is best, with the same score as without reductions
+		String italian = "r1b1k2r/ppppqppp/2n2n2/2b1p3/2B1P3/2NP1N2/PPP2PPP/R1BQK2R w KQkq - 0 6";
+		for (int depth = 4; depth <= 6; depth++) {
+			Search full = selective(new Search(depth, Long.MAX_VALUE), 0);
+			Search reduced = selective(new Search(depth, Long.MAX_VALUE), 2);
+			assertTrue(reduced.chooseMove(Position.fromFen(italian)) == full.chooseMove(Position.fromFen(italian)));
+			assertTrue(reduced.score() == full.score());
+		}
+
+		// Nobody passes in a pawn ending, where zugzwang is common
+		Search off = selective(new Search(6, Long.MAX_VALUE), 0);
+		Search on = selective(new Search(6, Long.MAX_VALUE), 1);
+		off.chooseMove(Position.fromFen("8/5k2/8/3p4/3P4/8/5K2/8 w - - 0 1"));
+		on.chooseMove(Position.fromFen("8/5k2/8/3p4/3P4/8/5K2/8 w - - 0 1"));
+		assertTrue(on.nodes() == off.nodes());
+	}
+
+	/**
+	 * Helper method, turn the selective search features on or off
+	 * 
+	 * @param search	The search
+	 * @param features	Bit 0 null move, bit 1 reductions, bit 2 check extensions
+	 * @return			The search
+	 */
+	private Search selective(Search search, int features) {
+		search.setNullMove((features & 1) != 0);
+		search.setReductions((features & 2) != 0);
+		search.setCheckExtensions((features & 4) != 0);
+		return search;
+	}
+
+	/**
+	 * Testing the transposition table keeps the deeper results
+	 */
+	@Test
+	void test_transposition_table() {
+		checkTable(TranspositionTable.create(1, false));
+		checkTable(TranspositionTable.create(1, true));
+	}
+
+	/**
+	 * Helper method, check a transposition table keeps the deeper results
+	 * 
+	 * @param tt	An empty table
+	 */
+	private void checkTable(TranspositionTable tt) {
+		int move = Moves.make(12, 28, Moves.NORMAL);
+		tt.store(42L, move, -150, 5, TranspositionTable.LOWER);
+		long data = tt.probe(42L);
+		assertTrue(TranspositionTable.move(data) == move);
+		assertTrue(TranspositionTable.score(data) == -150);
+		assertTrue(TranspositionTable.depth(data) == 5);
+		assertTrue(TranspositionTable.bound(data) == TranspositionTable.LOWER);
+		assertTrue(tt.probe(43L) == 0);
+		assertTrue(tt.hits() == 1 && tt.misses() == 1);
+
+		// Fill a bucket, the shallowest entry makes room for a deeper one
+		long bucket = 7L << 32;
+		for (int depth = 1; depth <= 4; depth++)
+			tt.store(bucket | depth, move, 0, depth, TranspositionTable.EXACT);
+		tt.store(bucket | 9, move, 0, 9, TranspositionTable.EXACT);
+		assertTrue(tt.probe(bucket | 1) == 0);
+		assertTrue(tt.probe(bucket | 2) != 0 && tt.probe(bucket | 9) != 0);
+		assertTrue(tt.overwrites() == 1);
+
+		// Entries of old searches go before shallow ones of this search
+		tt.newSearch();
+		tt.store(bucket | 10, move, 0, 1, TranspositionTable.EXACT);
+		tt.store(bucket | 11, move, 0, 1, TranspositionTable.EXACT);
+		assertTrue(tt.probe(bucket | 10) != 0);
+		assertTrue(tt.probe(bucket | 2) == 0);
+
+		long bytes = tt.bytes();
+		tt.clear();
+		assertTrue(tt.probe(bucket | 9) == 0);
+		assertTrue(tt.bytes() == bytes && tt.hits() == 0);
+	}
+
+	/**
+	 * Helper method, check every square of the board against the position
+	 * 
+	 * @param model		The model to check
+	 */
+	private void assertSynced(ChessModel model) { assertSynced(model, model.getPosition()); }
+
+	/**
+	 * Helper method, check every square of the board against a position
+	 * 
+	 * @param model		The model to check
+	 * @param pos		The position to check against
+	 */
+	private void assertSynced(ChessModel model, Position pos) {
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				Piece p = model.getPiece(row, col);
+				int code = p == null ? Position.EMPTY : Position.code(p);
+				assertTrue(pos.getPiece(row, col) == code);
+				if (p != null)
+					assertTrue((pos.occupancy() & (1L << Position.square(row, col))) != 0);
+			}
+		}
+		assertTrue(Long.bitCount(pos.occupancy()) == Long.bitCount(
+				pos.occupancy(Position.WHITE)) + Long.bitCount(pos.occupancy(Position.BLACK)));
+	}
+
 	/**
 	 * Helper method, make the same move at two controller
 	 * 
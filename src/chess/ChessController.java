@@ -1,5 +1,11 @@
 package chess;
 
+import engine.MoveChooser;
+import engine.Moves;
+import engine.OpeningBook;
+import engine.Position;
+import engine.Search;
+import engine.Tablebase;
 import enums.ChessColor;
 import pieces.Piece;
 import java.io.IOException;
@@ -7,6 +13,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import shared.Move;
 import javafx.application.Platform;
 
@@ -34,6 +45,70 @@ public class ChessController {
 	 * Whether it's playing as computer or not
 	 */
 	private boolean AI = false;
+
+	/**
+	 * The built in search of the AI, made when first needed since
+	 * its transposition table is big
+	 */
+	private Search search;
+
+	/**
+	 * Picks the moves when playing as AI, null for the built in search
+	 */
+	private MoveChooser chooser;
+
+	/**
+	 * The endgame tablebases the built in search plays from, or null
+	 */
+	private Tablebase tablebase;
+
+	/**
+	 * The opening book the AI plays from before searching, or null.
+	 * The system property chess.book gives the path of one.
+	 */
+	private OpeningBook book = OpeningBook.open(System.getProperty(OpeningBook.BOOK_PROPERTY));
+
+	/**
+	 * The endgame tablebases of the directory the system property
+	 * chess.tablebases gives, or null
+	 */
+	private static final Tablebase TABLEBASE = Tablebase.open(System.getProperty(Tablebase.DIRECTORY_PROPERTY));
+
+	/**
+	 * Picks among the book moves
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * The time the AI may think about a move, in milliseconds
+	 */
+	private long moveTime = 1000;
+
+	/**
+	 * Whether the AI thinks on the opponent's time in network games
+	 */
+	private boolean ponder = true;
+
+	/**
+	 * Runs the search on the opponent's time, made when first needed
+	 */
+	private ExecutorService ponderer;
+
+	/**
+	 * The search of the position after the expected reply, or null
+	 */
+	private Future<Integer> pondering;
+
+	/**
+	 * The hash of the position being pondered
+	 */
+	private long ponderHash;
+
+	/**
+	 * How often the opponent played the expected reply, and didn't
+	 */
+	private int ponderHits;
+	private int ponderMisses;
 	
 	/**
 	 * The socket for the connection
@@ -55,7 +130,10 @@ public class ChessController {
 	 * 
 	 * @param model		The model it holds
 	 */
-	public ChessController(ChessModel model) { this.model = model; }
+	public ChessController(ChessModel model) {
+		this.model = model;
+		if (TABLEBASE != null) setTablebase(TABLEBASE);
+	}
 	
 	/**
 	 * Check whether the game is over
@@ -85,6 +163,106 @@ public class ChessController {
 	 * Set this controller as AI playing
 	 */
 	public void setAsAI() { AI = true; }
+
+	/**
+	 * Set the time the AI may think about each move
+	 * 
+	 * @param millis	The time in milliseconds, at least 1
+	 */
+	public void setMoveTime(long millis) { moveTime = Math.max(1, millis); }
+
+	/**
+	 * Set the number of threads the built in search uses
+	 * 
+	 * @param threads	The number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		stopPondering();
+		search().setThreads(threads);
+	}
+
+	/**
+	 * Set the size of the built in search's transposition table
+	 * 
+	 * @param megabytes	The size in megabytes
+	 */
+	public void setHashSize(int megabytes) {
+		stopPondering();
+		search().setHashSize(megabytes);
+	}
+
+	/**
+	 * Clear the built in search's transposition table, for a new game
+	 */
+	public void clearHash() {
+		stopPondering();
+		if (search != null) search.clearHash();
+	}
+
+	/**
+	 * Get the built in search, making it the first time
+	 * 
+	 * @return	The search
+	 */
+	private Search search() {
+		if (search == null) {
+			search = new Search(Search.MAX_DEPTH, Long.MAX_VALUE);
+			search.setTablebase(tablebase);
+		}
+		return search;
+	}
+
+	/**
+	 * Set what picks the moves when playing as AI
+	 * 
+	 * @param chooser	The move chooser, or null for the built in search
+	 */
+	public void setMoveChooser(MoveChooser chooser) { this.chooser = chooser; }
+
+	/**
+	 * Set the opening book the AI plays from before searching
+	 * 
+	 * @param book	The book, or null for none
+	 */
+	public void setBook(OpeningBook book) { this.book = book; }
+
+	/**
+	 * Set whether the AI thinks on the opponent's time in network
+	 * games, searching the reply it expects
+	 * 
+	 * @param ponder	true to ponder
+	 */
+	public void setPonder(boolean ponder) {
+		this.ponder = ponder;
+		if (!ponder) stopPondering();
+	}
+
+	/**
+	 * Get how often the opponent played the reply pondered on
+	 * 
+	 * @return	The number of ponder hits
+	 */
+	public int getPonderHits() { return ponderHits; }
+
+	/**
+	 * Get how often the opponent played another move than the one
+	 * pondered on
+	 * 
+	 * @return	The number of ponder misses
+	 */
+	public int getPonderMisses() { return ponderMisses; }
+
+	/**
+	 * Set the endgame tablebases the built in search plays from and
+	 * the game ends by
+	 * 
+	 * @param tablebase	The tablebases, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+		if (search != null) search.setTablebase(tablebase);
+		model.setTablebase(tablebase);
+	}
 	
 	/**
 	 * 
@@ -108,6 +286,8 @@ public class ChessController {
 	
 	public void makeAMove(int currRow, int currCol, int desRow, int desCol, String type) {
 		Move message = model.makeAMove(currRow, currCol, desRow, desCol, type);
+		// No move of ours follows the one ending the game
+		if (pondering != null && model.isGameOver()) stopPondering();
 		if (message != null && oos != null) {
 			try {
 				oos.writeObject(message);
@@ -150,11 +330,95 @@ public class ChessController {
 	}
 
 	/**
-	 * Make a random move for the AI
+	 * Make a move for the AI: the one pondered on if the opponent
+	 * played the expected reply, else from the opening book if it
+	 * has one, else picked by the move chooser.
+	 * With no legal move left, a random one is played and
+	 * the king is lost.
+	 * In a network game the AI then ponders on the opponent's time.
 	 */
 	public void makeRandomMove() {
-		Move move = model.getRandomMove(color);
-		makeAMove(move.oldRow(), move.oldCol(), move.getRow(), move.getCol());
+		int packed = finishPondering();
+		if (packed == Moves.NONE && book != null) packed = book.probe(model.getPosition(), random);
+		if (packed == Moves.NONE) {
+			MoveChooser picker = chooser != null ? chooser : search();
+			packed = picker.chooseMove(model.getPosition(), moveTime * 1_000_000);
+		}
+		Move move = packed == Moves.NONE ? model.getRandomMove(color) : Move.unpack(packed);
+		if (move == null) return;
+		makeAMove(move.oldRow(), move.oldCol(), move.getRow(), move.getCol(), "ai");
+		if (move.isPromotion())
+			promotion(move.getRow(), move.getCol(), move.getPromotedType());
+		startPondering();
+	}
+
+	/**
+	 * Search the position after the reply the last search expects,
+	 * in the background, while the opponent thinks. Only the built
+	 * in search of a network game ponders.
+	 */
+	private void startPondering() {
+		if (!ponder || oos == null || chooser != null || search == null || model.isGameOver()) return;
+		Position pos = model.getPosition().copy();
+		int reply = search.expectedReply(pos);
+		if (reply == Moves.NONE) return;
+		pos.make(reply);
+		if (ponderer == null) {
+			ponderer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "ponder");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		ponderHash = pos.hash();
+		long nanos = moveTime * 1_000_000;
+		search.ponder(nanos);
+		pondering = ponderer.submit(() -> search.chooseMove(pos, nanos));
+	}
+
+	/**
+	 * End the search on the opponent's time now that its move is
+	 * in: on a ponder hit the search gets the move time from now and
+	 * keeps all it searched, on a miss it's stopped
+	 * 
+	 * @return	The move pondered, or Moves.NONE on a miss or if not pondering
+	 */
+	private int finishPondering() {
+		if (pondering == null) return Moves.NONE;
+		boolean hit = model.getHash() == ponderHash;
+		if (hit) search.ponderhit();
+		else search.stop();
+		int move = waitForPondering();
+		if (hit) ponderHits++;
+		else ponderMisses++;
+		return hit ? move : Moves.NONE;
+	}
+
+	/**
+	 * Stop the search on the opponent's time, if there's one
+	 */
+	private void stopPondering() {
+		if (pondering == null) return;
+		search.stop();
+		waitForPondering();
+	}
+
+	/**
+	 * Wait for the search on the opponent's time to return
+	 * 
+	 * @return	Its move, or Moves.NONE if it failed
+	 */
+	private int waitForPondering() {
+		Future<Integer> running = pondering;
+		pondering = null;
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		return Moves.NONE;
 	}
 	
 	/**
@@ -171,6 +435,7 @@ public class ChessController {
 	 */
 	public void loadGame(String filename) {
 		model.loadGame(filename);
+		clearHash();
 		try {
 			oos.writeObject(model);
 			oos.flush();
@@ -188,6 +453,14 @@ public class ChessController {
 		else return false;
 	}
 
+	/**
+	 * Check whether the game ended in a draw
+	 * 
+	 * @return	true if it's a draw
+	 * 			false if not
+	 */
+	public boolean isDraw() { return model.isDraw(); }
+
 	/**
 	 * Getter for color
 	 * 
@@ -244,6 +517,7 @@ public class ChessController {
 						}
 					} catch (Exception e) {
 						System.err.println("Something went wrong with the network! " + e.getMessage());
+						Platform.runLater(() -> stopPondering());
 					}
 				}
 			};
@@ -289,7 +563,10 @@ public class ChessController {
 								System.err.println("Invalid data type.");
 							}
 						}
-					} catch (Exception e) {System.err.println(e.getMessage());}
+					} catch (Exception e) {
+						System.err.println(e.getMessage());
+						Platform.runLater(() -> stopPondering());
+					}
 				}
 			};
 			new Thread(r).start();			
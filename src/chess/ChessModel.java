@@ -9,6 +9,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Observable;
+import engine.MoveGen;
+import engine.Moves;
+import engine.Position;
+import engine.Tablebase;
 import enums.ChessColor;
 import pieces.Bishop;
 import pieces.King;
@@ -51,6 +55,28 @@ public class ChessModel extends Observable implements Serializable {
 	 * column index 0-7 correspond to a-h
 	 */
 	private Piece[][] board;
+
+	/**
+	 * Bitboard copy of the board, kept in sync with it
+	 */
+	private transient Position position;
+
+	/**
+	 * Endgame tablebases that end the game on a checkmate or a
+	 * drawn ending, or null
+	 */
+	private transient Tablebase tablebase;
+
+	/**
+	 * Buffer for checking a move against the legal moves, made when
+	 * first needed
+	 */
+	private transient int[] scratch;
+
+	/**
+	 * The color to move next
+	 */
+	private ChessColor toMove = ChessColor.WHITE;
 	
 	// TODO make private again (Also change accessors in loadGame)
 	
@@ -92,6 +118,7 @@ public class ChessModel extends Observable implements Serializable {
 	public ChessModel() {
 		board = new Piece[8][8];
 		initializeBoard();
+		position = Position.fromBoard(board, enPassant, toMove);
 	}
 	
 	/**
@@ -103,6 +130,30 @@ public class ChessModel extends Observable implements Serializable {
 	 */
 	public Piece getPiece(int row, int col) { return board[row][col]; }
 
+	/**
+	 * Get the bitboard position behind the board
+	 * 
+	 * @return		The position
+	 */
+	public Position getPosition() { return position; }
+
+	/**
+	 * Get the Zobrist hash of the current position, which covers
+	 * the pieces, the side to move, castling rights and en passant
+	 * 
+	 * @return		The hash
+	 */
+	public long getHash() { return position.hash(); }
+
+	/**
+	 * Write the legal moves of the side to move into a buffer without
+	 * allocating, see engine.Moves for the encoding
+	 * 
+	 * @param moves	The buffer, at least MoveGen.MAX_MOVES long
+	 * @return		The number of moves written
+	 */
+	public int generateMoves(int[] moves) { return MoveGen.generate(position, moves); }
+
 	/**
 	 * Initialize the board
 	 */
@@ -134,6 +185,37 @@ public class ChessModel extends Observable implements Serializable {
 			board[1][col] = new Pawn(WHITE, 1, col);
 	}
 
+	/**
+	 * Check a move against the legal moves of the position
+	 * 
+	 * @param currRow	The row of the piece we want to move
+	 * @param currCol	The column of the piece we want to move
+	 * @param desRow	The row we want to move this piece to
+	 * @param desCol	The column we want to move this piece to
+	 * @return			0 - invalid move
+	 * 					1 - valid move
+	 * 					2 - en passant
+	 * 					3 - castle
+	 */
+	private int legalKind(int currRow, int currCol, int desRow, int desCol) {
+		Piece mover = board[currRow][currCol];
+		int from = Position.square(currRow, currCol);
+		int to = Position.square(desRow, desCol);
+		int move;
+		if (mover instanceof King && Math.abs(desCol - currCol) == 2)
+			move = Moves.make(from, to, Moves.CASTLE);
+		// The piece is picked after the move, any will do to check it
+		else if (mover instanceof Pawn && (desRow == 0 || desRow == 7))
+			move = Moves.promotion(from, to, Position.QUEEN);
+		else if (mover instanceof Pawn && desCol != currCol && board[desRow][desCol] == null)
+			move = Moves.make(from, to, Moves.EN_PASSANT);
+		else move = Moves.make(from, to, Moves.NORMAL);
+		if (scratch == null) scratch = new int[MoveGen.MAX_MOVES];
+		if (!MoveGen.isLegal(position, move, scratch)) return 0;
+		if (Moves.kind(move) == Moves.EN_PASSANT) return 2;
+		return Moves.kind(move) == Moves.CASTLE ? 3 : 1;
+	}
+
 	/**
 	 * Make a move and notify the observer
 	 * 
@@ -145,7 +227,16 @@ public class ChessModel extends Observable implements Serializable {
 	 * @return			The move message
 	 */
 	public Move makeAMove(int currRow, int currCol, int desRow, int desCol, String who) {
-		int isValid = board[currRow][currCol].isValidMove(board, desRow, desCol);
+		Piece mover = board[currRow][currCol];
+		boolean white = mover.isWhite();
+		int isValid = legalKind(currRow, currCol, desRow, desCol);
+		// Leaving a king to be taken, or taking it, isn't legal chess, only the piece rules allow it
+		if (isValid == 0) {
+			if (mover instanceof King)
+				isValid = ((King) mover).isValidMove(board, desRow, desCol,
+						position.attackMap(white ? Position.BLACK : Position.WHITE));
+			else isValid = mover.isValidMove(board, desRow, desCol);
+		}
 		if (isValid == 0) return null;
 		Move msg= new Move(currRow, currCol, desRow, desCol);
 
@@ -162,6 +253,7 @@ public class ChessModel extends Observable implements Serializable {
 			board[desRow][desCol] = board[currRow][currCol];
 			board[desRow][desCol].updateLocation(desRow, desCol);
 			board[currRow][currCol] = null;
+			position.move(Position.square(currRow, currCol), Position.square(desRow, desCol));
 			curr = board[desRow][desCol];
 		// Valid en passant
 		} else if (isValid == 2) {
@@ -173,6 +265,8 @@ public class ChessModel extends Observable implements Serializable {
 				board[desRow][desCol].updateLocation(desRow, desCol);
 				curr = board[desRow][desCol];
 				board[currRow][currCol] = null;
+				position.remove(Position.square(currRow, desCol));
+				position.move(Position.square(currRow, currCol), Position.square(desRow, desCol));
 			}
 		// Valid castle
 		} else if (isValid == 3) {
@@ -187,9 +281,13 @@ public class ChessModel extends Observable implements Serializable {
 			board[currRow][rookCol] = null;
 			board[desRow][desCol - xDir] = rook;
 			board[desRow][desCol - xDir].updateLocation(desRow, desCol - xDir);
+			position.move(Position.square(currRow, currCol), Position.square(desRow, desCol));
+			position.move(Position.square(currRow, rookCol), Position.square(desRow, desCol - xDir));
 			curr = board[desRow][desCol - xDir];
 			currKing = (King) board[desRow][desCol];
 		}
+		toMove = white ? ChessColor.BLACK : ChessColor.WHITE;
+		position.setSideToMove(white ? Position.BLACK : Position.WHITE);
 
 		// If we have a enPassantable piece, after the next move,
 		// No matter it's captured or not, it's not enPassantable anymore
@@ -199,15 +297,14 @@ public class ChessModel extends Observable implements Serializable {
 		}
 
 		if (isGameOver()) {
+			position.setEnPassant(null);
 			setChanged();
 			this.notifyObservers(msg);
 			return msg;
 		}
 		
 		// check handling
-		if (curr instanceof King) ((King) curr).updateCheckedBy(board);
-		else isChecking(curr);
-		if (currKing != null) isChecking(currKing);
+		updateChecks();
 		// Pawn handling
 		if (curr instanceof Pawn) {
 			Pawn p = (Pawn) curr;
@@ -219,15 +316,16 @@ public class ChessModel extends Observable implements Serializable {
 			if (desRow == endRow && who.equals("controller"))
 				msg.setPromotion(true, "c");
 			// Check if it's en passantable now
-			if (p.checkIfFirstMove()) {
-				p.firstMoveDone();
-				if (Math.abs(desRow - currRow) == 2) {
-					p.setEnPassant(true);
-					enPassant = p;
-				}
-			} else if (curr.checkIfFirstMove())
-				curr.firstMoveDone();
+			if (p.checkIfFirstMove() && Math.abs(desRow - currRow) == 2) {
+				p.setEnPassant(true);
+				enPassant = p;
+			}
 		}
+		// Kings and rooks lose their castling rights once they moved
+		if (curr.checkIfFirstMove()) curr.firstMoveDone();
+		if (currKing != null) currKing.firstMoveDone();
+		position.setEnPassant(enPassant);
+		position.setCastlingRights(Position.castlingRights(board));
 		setChanged();
 		this.notifyObservers(msg);
 		return msg;
@@ -260,50 +358,33 @@ public class ChessModel extends Observable implements Serializable {
 	 */
 	public Move getRandomMove(ChessColor color) {
 		ArrayList<Move> validMoves = new ArrayList<>();
-		for (int r = 0; r<8; r++) {
-			for (int c = 0; c<8; c++) {
-				if (board[r][c] == null) continue;
-				if (board[r][c].getColor().equals(color))
-					validMoves.addAll(board[r][c].validMoves(board));
-			}
+		int side = color.equals(ChessColor.WHITE) ? Position.WHITE : Position.BLACK;
+		for (long bits = position.occupancy(side); bits != 0; bits &= bits - 1) {
+			int sq = Long.numberOfTrailingZeros(bits);
+			validMoves.addAll(board[sq / 8][sq % 8].validMoves(board));
 		}
 		
 		Collections.shuffle(validMoves);
 		
 		for (Move move : validMoves) {
-			Piece p = board[move.getCol()][move.getRow()];
-			if (p instanceof Pawn) {
-				// TODO: verify if check!
-				if (color.equals(ChessColor.WHITE) 
-						&& move.getRow() == 7) 
-					continue;
-				else if (color.equals(ChessColor.BLACK)
-						&& move.getRow() == 0)
-					continue;
-			} else return move;
+			Piece p = board[move.oldRow()][move.oldCol()];
+			// Promotions need a second message, leave them to the engine
+			if (p instanceof Pawn && (move.getRow() == 7 || move.getRow() == 0))
+				continue;
+			return move;
 		}
 		return null;
 	}
 
 	/**
 	 * Helper method for the check logic
-	 * Check whether the input piece is checking
-	 * the opponent's king
-	 * 
-	 * @param p		The piece we want to check
-	 */
-	private void isChecking(Piece p) {
-		ArrayList<Move> validMoves = p.validMoves(board);
-		King king;
-		if (p.getColor().equals(ChessColor.WHITE)) king = blackKing;
-		else king = whiteKing;
-		for (Move m: validMoves) {
-			if (m.getCol() == king.getCol() &&
-					m.getRow() == king.getRow()) {
-				king.addToCheckedBy(p);
-				return;
-			}
-		}
+	 * Look up the pieces attacking each king in the attack maps
+	 */
+	private void updateChecks() {
+		whiteKing.updateCheckedBy(board, position.attackersTo(
+				position.king(Position.WHITE), Position.BLACK));
+		blackKing.updateCheckedBy(board, position.attackersTo(
+				position.king(Position.BLACK), Position.WHITE));
 	}
 
 	/**
@@ -340,6 +421,14 @@ public class ChessModel extends Observable implements Serializable {
 		return king.isChecked();
 	}
 
+	/**
+	 * Set the endgame tablebases that end the game as soon as
+	 * an ending they have is checkmate or drawn
+	 * 
+	 * @param tablebase	The tablebases, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) { this.tablebase = tablebase; }
+
 	/**
 	 * Check whether the game is over
 	 * 
@@ -347,7 +436,7 @@ public class ChessModel extends Observable implements Serializable {
 	 * 			false if not
 	 */
 	public boolean isGameOver() {
-		return blackKing == null || whiteKing == null;
+		return blackKing == null || whiteKing == null || tablebaseResult() != Tablebase.UNKNOWN;
 	}
 
 	/**
@@ -358,8 +447,32 @@ public class ChessModel extends Observable implements Serializable {
 	 * 				false if not
 	 */
 	public boolean isWinner(ChessColor color) {
-		if (color.equals(ChessColor.WHITE)) return blackKing == null;
-		else return whiteKing == null;
+		if (color.equals(ChessColor.WHITE) ? blackKing == null : whiteKing == null) return true;
+		return tablebaseResult() == Tablebase.LOSS && !color.equals(toMove);
+	}
+
+	/**
+	 * Check whether the game ended in a draw, an ending the
+	 * tablebases have as drawn
+	 * 
+	 * @return	true if it's a draw
+	 * 			false if not
+	 */
+	public boolean isDraw() { return tablebaseResult() == Tablebase.DRAW; }
+
+	/**
+	 * Look the position up in the tablebases
+	 * 
+	 * @return	Tablebase.LOSS if the side to move is checkmated,
+	 * 			Tablebase.DRAW if the ending is drawn,
+	 * 			Tablebase.UNKNOWN if the game goes on
+	 */
+	private int tablebaseResult() {
+		if (tablebase == null || whiteKing == null || blackKing == null) return Tablebase.UNKNOWN;
+		int wdl = tablebase.wdl(position);
+		if (wdl == Tablebase.DRAW || (wdl == Tablebase.LOSS && tablebase.distance(position) == 0))
+			return wdl;
+		return Tablebase.UNKNOWN;
 	}
 
 	/**
@@ -409,6 +522,8 @@ public class ChessModel extends Observable implements Serializable {
 		this.blackKing = model.blackKing;
 		this.myTurn = model.isMyTurn();
 		this.board = model.getBoard();
+		this.toMove = model.toMove == null ? ChessColor.WHITE : model.toMove;
+		this.position = Position.fromBoard(board, enPassant, toMove);
 
 		this.setChanged();
 		this.notifyObservers(model);
@@ -421,6 +536,8 @@ public class ChessModel extends Observable implements Serializable {
 	 */
 	public void addPiece(Piece piece) {
 		this.board[piece.getRow()][piece.getCol()] = piece;
+		position.put(Position.square(piece.getRow(), piece.getCol()), Position.code(piece));
+		if (!isGameOver()) updateChecks();
 
 		this.setChanged();
 		this.notifyObservers(piece);
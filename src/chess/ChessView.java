@@ -109,6 +109,9 @@ public class ChessView extends Application implements Observer {
 			if (controller.isWinner()) {
 				Alert alert= new Alert(AlertType.INFORMATION, "Congratulations! You win!");
 				alert.showAndWait();
+			} else if (controller.isDraw()) {
+				Alert alert= new Alert(AlertType.INFORMATION, "Draw!");
+				alert.showAndWait();
 			} else {
 				Alert alert= new Alert(AlertType.INFORMATION, "You lose!");
 				alert.showAndWait();
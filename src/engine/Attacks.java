@@ -0,0 +1,326 @@
+package engine;
+
+/**
+ * Precomputed attack tables
+ *
+ * Knight, king and pawn attacks are plain 64 entry tables.
+ * Sliding attacks use magic bitboards: the blockers on a piece's
+ * rays are masked out of the occupancy, multiplied by a magic
+ * number and shifted down into an index of a per-square table.
+ * The magic numbers were found once by trial and are checked when
+ * the tables are filled.
+ *
+ * @author Siwen Wang
+ */
+public final class Attacks {
+
+	/**
+	 * Rook and bishop ray directions as {row, column} steps
+	 */
+	private static final int[][] ROOK_DIRS = {{-1, 0}, {0, -1}, {1, 0}, {0, 1}};
+	private static final int[][] BISHOP_DIRS = {{-1, -1}, {1, -1}, {-1, 1}, {1, 1}};
+
+	/**
+	 * Knight and king steps as {row, column}
+	 */
+	private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2},
+			{1, -2}, {1, 2}, {2, -1}, {2, 1}};
+	private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1},
+			{0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+	/**
+	 * Leaper attacks of each square
+	 */
+	private static final long[] KNIGHT = new long[64];
+	private static final long[] KING = new long[64];
+
+	/**
+	 * Pawn attacks of each square, [color][square]
+	 */
+	private static final long[][] PAWN = new long[2][64];
+
+	/**
+	 * Squares strictly between two aligned squares, [from][to]
+	 */
+	private static final long[][] BETWEEN = new long[64][64];
+
+	/**
+	 * The whole line through two aligned squares, [from][to]
+	 */
+	private static final long[][] LINE = new long[64][64];
+
+	/**
+	 * Relevant blocker squares of each square, edges excluded
+	 */
+	private static final long[] ROOK_MASK = new long[64];
+	private static final long[] BISHOP_MASK = new long[64];
+
+	/**
+	 * Magic multipliers of each square
+	 */
+	private static final long[] ROOK_MAGIC = {
+		0x0080008020400010L, 0xA040100040002004L, 0xC080081000842001L, 0xA080041002080081L,
+		0x0200200409100200L, 0x8200011008040200L, 0x3A00014200008804L, 0x0100020040308100L,
+		0x1000802040008004L, 0x0010400050002000L, 0x0208801000802008L, 0x1800801000080084L,
+		0x1006000420900A00L, 0x0001808004001200L, 0x2482000108020004L, 0x800100010008A04AL,
+		0x0040008000208040L, 0x00008A8020044000L, 0x40050100124A2000L, 0xD618008008100280L,
+		0x0800808004000800L, 0x0004008002008004L, 0x0000040048020110L, 0x80800A00004C1081L,
+		0x0040288080084000L, 0x0020008080400028L, 0xC220200080100880L, 0x0000100100200900L,
+		0x000F110100050800L, 0x0008020080040080L, 0x0060280400820150L, 0xE001000100004082L,
+		0x0190204008800080L, 0x0100402000401000L, 0x00C0C10199002000L, 0x1000100080800800L,
+		0x1008800800800400L, 0x4040040080800200L, 0x0C08800100800200L, 0x1C08C10042000084L,
+		0x0000800040018020L, 0x08C0002000848040L, 0x4800200010008080L, 0x0101011003090020L,
+		0x2200080004008080L, 0x0200040002008080L, 0x0400020108040090L, 0x0804040040820001L,
+		0x0000210090420600L, 0x1101002040008100L, 0x0835200030088180L, 0x1012004008601600L,
+		0x0001880101100500L, 0x0004020004008080L, 0x2462005401083200L, 0x0002008044010200L,
+		0x202100F9638000C1L, 0x09448010A8400301L, 0x0001000C10402001L, 0x0A90040900100021L,
+		0x6301000800020411L, 0x0423000204000801L, 0x0000102100C20804L, 0x408C8C0483A10842L
+	};
+	private static final long[] BISHOP_MAGIC = {
+		0x00206004210023A0L, 0x0011216801004000L, 0x01040800A1040100L, 0x2004450200408001L,
+		0x1004042008001000L, 0x0042021004202880L, 0x0004013822104000L, 0x1012008041101080L,
+		0x9A00212002021841L, 0x008002C408048D00L, 0x2003082820408080L, 0x100048A082000112L,
+		0x0C012C1028400110L, 0x0001120210040A02L, 0x080214015C022000L, 0x2400060884016802L,
+		0x1408008410040811L, 0x062000840808811CL, 0x14880004084C0108L, 0x4278080082014008L,
+		0x1002151401200068L, 0x800A020022100208L, 0x0140603401080894L, 0x004200C110520200L,
+		0x4028094704200818L, 0x0190028404480200L, 0x10080210C5060200L, 0x0402002048008020L,
+		0x04A1001003004002L, 0x0808008102406000L, 0x0141104804020800L, 0x0009102003008840L,
+		0x4002492000400241L, 0x0001010841200810L, 0x6842002200440808L, 0x0404910800840040L,
+		0xE880510040040040L, 0xA010020080133000L, 0x8021092404090401L, 0x8208012900042094L,
+		0x8028024820040481L, 0x0001013042201000L, 0x1040104028005000L, 0x0800424010424202L,
+		0x0088400408200100L, 0x000101112200C100L, 0x1404012401000400L, 0x4008080100254440L,
+		0x0011208220202400L, 0x0402008084102004L, 0x0000024108210001L, 0x0000002020880900L,
+		0x0000051002120800L, 0x0000202002408000L, 0x8020080588258000L, 0x0002304141010008L,
+		0x0106804410010890L, 0x0000CB0100822100L, 0x00006002022B0C04L, 0x0004120000208840L,
+		0x0290C10050021200L, 0x2001124028328422L, 0x1110048808010400L, 0x8002103012028124L
+	};
+
+	/**
+	 * Right shift of each square, 64 minus the number of relevant bits
+	 */
+	private static final int[] ROOK_SHIFT = new int[64];
+	private static final int[] BISHOP_SHIFT = new int[64];
+
+	/**
+	 * Attack sets of each square, indexed by the magic hash
+	 */
+	private static final long[][] ROOK_TABLE = new long[64][];
+	private static final long[][] BISHOP_TABLE = new long[64][];
+
+	static {
+		for (int sq = 0; sq < 64; sq++) {
+			KNIGHT[sq] = steps(sq, KNIGHT_STEPS);
+			KING[sq] = steps(sq, KING_STEPS);
+			PAWN[Position.WHITE][sq] = steps(sq, new int[][] {{1, -1}, {1, 1}});
+			PAWN[Position.BLACK][sq] = steps(sq, new int[][] {{-1, -1}, {-1, 1}});
+			ROOK_MASK[sq] = relevantMask(sq, ROOK_DIRS);
+			BISHOP_MASK[sq] = relevantMask(sq, BISHOP_DIRS);
+			ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+			BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+			ROOK_TABLE[sq] = fillTable(sq, ROOK_DIRS, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_SHIFT[sq]);
+			BISHOP_TABLE[sq] = fillTable(sq, BISHOP_DIRS, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_SHIFT[sq]);
+		}
+		for (int a = 0; a < 64; a++) {
+			for (int b = 0; b < 64; b++) {
+				long ends = (1L << a) | (1L << b);
+				if (a == b) continue;
+				if ((rook(a, 0) & (1L << b)) != 0) {
+					BETWEEN[a][b] = rook(a, 1L << b) & rook(b, 1L << a);
+					LINE[a][b] = (rook(a, 0) & rook(b, 0)) | ends;
+				} else if ((bishop(a, 0) & (1L << b)) != 0) {
+					BETWEEN[a][b] = bishop(a, 1L << b) & bishop(b, 1L << a);
+					LINE[a][b] = (bishop(a, 0) & bishop(b, 0)) | ends;
+				}
+			}
+		}
+	}
+
+	/**
+	 * No instances
+	 */
+	private Attacks() {}
+
+	/**
+	 * Get the squares a knight attacks
+	 *
+	 * @param sq		The knight's square
+	 * @return			The attack set
+	 */
+	public static long knight(int sq) { return KNIGHT[sq]; }
+
+	/**
+	 * Get the squares a king attacks
+	 *
+	 * @param sq		The king's square
+	 * @return			The attack set
+	 */
+	public static long king(int sq) { return KING[sq]; }
+
+	/**
+	 * Get the squares a pawn attacks
+	 *
+	 * @param color		The pawn's color
+	 * @param sq		The pawn's square
+	 * @return			The attack set
+	 */
+	public static long pawn(int color, int sq) { return PAWN[color][sq]; }
+
+	/**
+	 * Get the squares a rook attacks
+	 *
+	 * @param sq		The rook's square
+	 * @param occupied	All occupied squares
+	 * @return			The attack set, including blockers of either color
+	 */
+	public static long rook(int sq, long occupied) {
+		return ROOK_TABLE[sq][(int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+	}
+
+	/**
+	 * Get the squares a bishop attacks
+	 *
+	 * @param sq		The bishop's square
+	 * @param occupied	All occupied squares
+	 * @return			The attack set, including blockers of either color
+	 */
+	public static long bishop(int sq, long occupied) {
+		return BISHOP_TABLE[sq][(int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+	}
+
+	/**
+	 * Get the squares a queen attacks
+	 *
+	 * @param sq		The queen's square
+	 * @param occupied	All occupied squares
+	 * @return			The attack set, including blockers of either color
+	 */
+	public static long queen(int sq, long occupied) {
+		return rook(sq, occupied) | bishop(sq, occupied);
+	}
+
+	/**
+	 * Get the squares strictly between two squares
+	 *
+	 * @param a			One square
+	 * @param b			The other square
+	 * @return			The squares between, 0 if they're not on one line
+	 */
+	public static long between(int a, int b) { return BETWEEN[a][b]; }
+
+	/**
+	 * Get the line through two squares, from edge to edge
+	 *
+	 * @param a			One square
+	 * @param b			The other square
+	 * @return			The line, 0 if they're not on one line
+	 */
+	public static long line(int a, int b) { return LINE[a][b]; }
+
+	/**
+	 * Get the squares any piece attacks
+	 *
+	 * @param code		The piece code, see Position.code
+	 * @param sq		The piece's square
+	 * @param occupied	All occupied squares
+	 * @return			The attack set
+	 */
+	public static long of(int code, int sq, long occupied) {
+		switch (Position.typeOf(code)) {
+			case Position.PAWN: return pawn(Position.colorOf(code), sq);
+			case Position.KNIGHT: return knight(sq);
+			case Position.BISHOP: return bishop(sq, occupied);
+			case Position.ROOK: return rook(sq, occupied);
+			case Position.QUEEN: return queen(sq, occupied);
+			default: return king(sq);
+		}
+	}
+
+	/**
+	 * Get the squares single steps reach, only used to fill the tables
+	 *
+	 * @param sq		The origin square
+	 * @param steps		The steps
+	 * @return			The reachable squares
+	 */
+	private static long steps(int sq, int[][] steps) {
+		long set = 0;
+		for (int[] s : steps) {
+			int r = sq / 8 + s[0];
+			int c = sq % 8 + s[1];
+			if (r >= 0 && r < 8 && c >= 0 && c < 8)
+				set |= 1L << (r * 8 + c);
+		}
+		return set;
+	}
+
+	/**
+	 * Walk the rays one square at a time, only used to fill the tables
+	 *
+	 * @param sq		The origin square
+	 * @param dirs		The ray directions
+	 * @param occupied	All occupied squares
+	 * @return			The attack set
+	 */
+	private static long slidingAttacks(int sq, int[][] dirs, long occupied) {
+		long attacks = 0;
+		for (int[] d : dirs) {
+			int r = sq / 8 + d[0];
+			int c = sq % 8 + d[1];
+			while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+				long bit = 1L << (r * 8 + c);
+				attacks |= bit;
+				if ((occupied & bit) != 0) break;
+				r += d[0];
+				c += d[1];
+			}
+		}
+		return attacks;
+	}
+
+	/**
+	 * Get the squares whose occupancy changes the attack set.
+	 * The last square of each ray never matters.
+	 *
+	 * @param sq		The origin square
+	 * @param dirs		The ray directions
+	 * @return			The mask
+	 */
+	private static long relevantMask(int sq, int[][] dirs) {
+		long mask = 0;
+		for (int[] d : dirs) {
+			int r = sq / 8 + d[0];
+			int c = sq % 8 + d[1];
+			while (r + d[0] >= 0 && r + d[0] < 8 && c + d[1] >= 0 && c + d[1] < 8) {
+				mask |= 1L << (r * 8 + c);
+				r += d[0];
+				c += d[1];
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Fill the attack table of one square
+	 *
+	 * @param sq		The square
+	 * @param dirs		The ray directions
+	 * @param mask		The relevant mask
+	 * @param magic		The magic number
+	 * @param shift		The shift
+	 * @return			The table
+	 */
+	private static long[] fillTable(int sq, int[][] dirs, long mask, long magic, int shift) {
+		long[] table = new long[1 << (64 - shift)];
+		// Enumerate every subset of the mask (Carry-Rippler)
+		long subset = 0;
+		do {
+			long attacks = slidingAttacks(sq, dirs, subset);
+			int index = (int) ((subset * magic) >>> shift);
+			if (table[index] != 0 && table[index] != attacks)
+				throw new IllegalStateException("Bad magic for square " + sq);
+			table[index] = attacks;
+			subset = (subset - mask) & mask;
+		} while (subset != 0);
+		return table;
+	}
+}
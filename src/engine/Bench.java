@@ -0,0 +1,121 @@
+package engine;
+
+/**
+ * Search benchmark, nodes per second from one thread up to many
+ *
+ * Every thread count searches the reference positions of Perft
+ * for the same time each, with a fresh table, so the rates show
+ * how Lazy SMP scales on this machine.
+ *
+ * With -selective it compares the selective search features
+ * instead: each one alone, none and all search the positions to a
+ * fixed depth, for the nodes it takes, and for a fixed time, for
+ * the depth reached.
+ *
+ * Usage:
+ *	java engine.Bench [millis per position] [max threads]
+ *	java engine.Bench -selective [millis per position] [depth]
+ *
+ * @author Siwen Wang
+ */
+public class Bench {
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param args	The time per position in milliseconds, the most threads
+	 */
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-selective")) {
+			selective(args.length > 1 ? Long.parseLong(args[1]) : 1000,
+					args.length > 2 ? Integer.parseInt(args[2]) : 6);
+			return;
+		}
+		long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		// Warm up the JIT so the first count isn't penalized
+		Search warmup = new Search(Search.MAX_DEPTH, Long.MAX_VALUE);
+		for (String fen : Perft.SUITE)
+			warmup.chooseMove(Position.fromFen(fen), millis * 1_000_000 / 4);
+
+		long baseRate = 0;
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			Search search = new Search(Search.MAX_DEPTH, Long.MAX_VALUE);
+			search.setThreads(threads);
+			long nodes = 0;
+			long depths = 0;
+			double ordering = 0;
+			double pawnHits = 0;
+			long start = System.nanoTime();
+			for (String fen : Perft.SUITE) {
+				search.chooseMove(Position.fromFen(fen), millis * 1_000_000);
+				nodes += search.nodes();
+				depths += search.completedDepth();
+				ordering += search.firstMoveCutoffRate();
+				pawnHits += search.pawnHitRate();
+			}
+			long rate = Perft.nodesPerSecond(nodes, System.nanoTime() - start);
+			search.shutdown();
+			if (threads == 1) baseRate = rate;
+			TranspositionTable tt = search.table();
+			System.out.printf("threads %d: %d nodes, %d nps, %.2fx, average depth %.1f,"
+					+ " hash hits %.1f%%, overwrites %d, first move cutoffs %.1f%%,"
+					+ " pawn hits %.1f%%%n", threads,
+					nodes, rate, baseRate == 0 ? 0 : (double) rate / baseRate,
+					(double) depths / Perft.SUITE.length,
+					100.0 * tt.hits() / Math.max(1, tt.hits() + tt.misses()), tt.overwrites(),
+					100.0 * ordering / Perft.SUITE.length, 100.0 * pawnHits / Perft.SUITE.length);
+		}
+	}
+
+	/**
+	 * Compare the selective search features by the nodes a fixed
+	 * depth takes and the depth a fixed time reaches
+	 *
+	 * @param millis	The time per position in milliseconds
+	 * @param depth		The fixed depth
+	 */
+	private static void selective(long millis, int depth) {
+		String[] names = {"none", "null move", "reductions", "check extensions", "all"};
+		boolean[][] features = {{false, false, false}, {true, false, false}, {false, true, false},
+				{false, false, true}, {true, true, true}};
+		// Warm up the JIT so the first configuration isn't penalized
+		Search warmup = new Search(depth, Long.MAX_VALUE);
+		for (String fen : Perft.SUITE)
+			warmup.chooseMove(Position.fromFen(fen));
+
+		for (int i = 0; i < names.length; i++) {
+			long nodes = 0;
+			long start = System.nanoTime();
+			for (String fen : Perft.SUITE) {
+				Search search = configure(new Search(depth, Long.MAX_VALUE), features[i]);
+				search.chooseMove(Position.fromFen(fen));
+				nodes += search.nodes();
+			}
+			long elapsed = System.nanoTime() - start;
+			long depths = 0;
+			for (String fen : Perft.SUITE) {
+				Search search = configure(new Search(Search.MAX_DEPTH, Long.MAX_VALUE), features[i]);
+				search.chooseMove(Position.fromFen(fen), millis * 1_000_000);
+				depths += search.completedDepth();
+			}
+			System.out.printf("%-16s depth %d: %d nodes in %.2f s, %d ms: average depth %.1f%n",
+					names[i], depth, nodes, elapsed / 1e9, millis, (double) depths / Perft.SUITE.length);
+		}
+	}
+
+	/**
+	 * Turn the selective search features of a search on or off
+	 *
+	 * @param search	The search
+	 * @param features	Null move, reductions, check extensions
+	 * @return			The search
+	 */
+	private static Search configure(Search search, boolean[] features) {
+		search.setNullMove(features[0]);
+		search.setReductions(features[1]);
+		search.setCheckExtensions(features[2]);
+		return search;
+	}
+}
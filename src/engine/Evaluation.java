@@ -0,0 +1,459 @@
+package engine;
+
+import static engine.Position.BLACK;
+import static engine.Position.WHITE;
+
+/**
+ * Static evaluation of a position, in centipawns
+ *
+ * Each piece is worth its material plus a bonus for its square, with
+ * one set of values for the middlegame and one for the endgame. The
+ * score blends the two by the game phase, the non-pawn material left
+ * on the board, so a position slides from one to the other as pieces
+ * come off instead of jumping between them.
+ *
+ * The position keeps both sums and the phase up to date as pieces
+ * are put and removed, so evaluating costs a few multiplications,
+ * not a pass over the board.
+ *
+ * The tables are the PeSTO values, from white's side with a8 first,
+ * the way a board is printed.
+ *
+ * On top of that come pawn structure terms, passed, isolated,
+ * doubled and backward pawns, which only depend on the pawns and
+ * are cached by the search in a PawnTable, and the pawn shield in
+ * front of each king.
+ *
+ * @author Siwen Wang
+ */
+public final class Evaluation {
+
+	/**
+	 * Value of each piece type, pawn to king, for ordering and pruning
+	 */
+	public static final int[] VALUES = {100, 320, 330, 500, 900, 0};
+
+	/**
+	 * The phase with every piece on the board
+	 */
+	public static final int TOTAL_PHASE = 24;
+
+	/**
+	 * Phase each piece type adds, pawn to king
+	 */
+	static final int[] PHASE = {0, 1, 1, 2, 4, 0};
+
+	/**
+	 * Bonus of a king and pawn ending the KPK bitbase has as won,
+	 * on top of the pawn's own score
+	 */
+	private static final int KPK_WIN = 700;
+
+	/**
+	 * Middlegame and endgame bonus of a passed pawn by its rank,
+	 * counted from its own side
+	 */
+	private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0};
+	private static final int[] PASSED_EG = {0, 10, 15, 25, 45, 75, 110, 0};
+
+	/**
+	 * Middlegame and endgame penalties of weak pawns
+	 */
+	private static final int ISOLATED_MG = -8;
+	private static final int ISOLATED_EG = -14;
+	private static final int DOUBLED_MG = -10;
+	private static final int DOUBLED_EG = -20;
+	private static final int BACKWARD_MG = -8;
+	private static final int BACKWARD_EG = -10;
+
+	/**
+	 * Middlegame bonus of each pawn sheltering a king still on its
+	 * first two ranks
+	 */
+	private static final int SHIELD_MG = 12;
+
+	/**
+	 * The squares of each file, and of the files next to it
+	 */
+	private static final long[] FILES = new long[8];
+	private static final long[] ADJACENT_FILES = new long[8];
+
+	/**
+	 * By color and square, the squares ahead on the same file, the
+	 * squares ahead on the same and the adjacent files, where no
+	 * enemy pawn may be for a pawn to be passed, and the squares on
+	 * the adjacent files level with or behind it, where a pawn could
+	 * support it
+	 */
+	private static final long[][] FORWARD = new long[2][64];
+	private static final long[][] PASSED = new long[2][64];
+	private static final long[][] SUPPORT = new long[2][64];
+
+	/**
+	 * By color and king square, the squares one and two ranks in
+	 * front of the king on its own and the adjacent files
+	 */
+	private static final long[][] SHIELD = new long[2][64];
+
+	/**
+	 * Middlegame and endgame material, pawn to king
+	 */
+	private static final int[] MG_VALUES = {82, 337, 365, 477, 1025, 0};
+	private static final int[] EG_VALUES = {94, 281, 297, 512, 936, 0};
+
+	/**
+	 * Middlegame and endgame score of each piece code on each square,
+	 * material included, positive for white and negative for black
+	 */
+	static final int[][] MG = new int[12][64];
+	static final int[][] EG = new int[12][64];
+
+	private static final int[] MG_PAWN = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		 98, 134,  61,  95,  68, 126,  34, -11,
+		 -6,   7,  26,  31,  65,  56,  25, -20,
+		-14,  13,   6,  21,  23,  12,  17, -23,
+		-27,  -2,  -5,  12,  17,   6,  10, -25,
+		-26,  -4,  -4, -10,   3,   3,  33, -12,
+		-35,  -1, -20, -23, -15,  24,  38, -22,
+		  0,   0,   0,   0,   0,   0,   0,   0,
+	};
+
+	private static final int[] EG_PAWN = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		178, 173, 158, 134, 147, 132, 165, 187,
+		 94, 100,  85,  67,  56,  53,  82,  84,
+		 32,  24,  13,   5,  -2,   4,  17,  17,
+		 13,   9,  -3,  -7,  -7,  -8,   3,  -1,
+		  4,   7,  -6,   1,   0,  -5,  -1,  -8,
+		 13,   8,   8,  10,  13,   0,   2,  -7,
+		  0,   0,   0,   0,   0,   0,   0,   0,
+	};
+
+	private static final int[] MG_KNIGHT = {
+		-167, -89, -34, -49,  61, -97, -15, -107,
+		 -73, -41,  72,  36,  23,  62,   7,  -17,
+		 -47,  60,  37,  65,  84, 129,  73,   44,
+		  -9,  17,  19,  53,  37,  69,  18,   22,
+		 -13,   4,  16,  13,  28,  19,  21,   -8,
+		 -23,  -9,  12,  10,  19,  17,  25,  -16,
+		 -29, -53, -12,  -3,  -1,  18, -14,  -19,
+		-105, -21, -58, -33, -17, -28, -19,  -23,
+	};
+
+	private static final int[] EG_KNIGHT = {
+		-58, -38, -13, -28, -31, -27, -63, -99,
+		-25,  -8, -25,  -2,  -9, -25, -24, -52,
+		-24, -20,  10,   9,  -1,  -9, -19, -41,
+		-17,   3,  22,  22,  22,  11,   8, -18,
+		-18,  -6,  16,  25,  16,  17,   4, -18,
+		-23,  -3,  -1,  15,  10,  -3, -20, -22,
+		-42, -20, -10,  -5,  -2, -20, -23, -44,
+		-29, -51, -23, -15, -22, -18, -50, -64,
+	};
+
+	private static final int[] MG_BISHOP = {
+		-29,   4, -82, -37, -25, -42,   7,  -8,
+		-26,  16, -18, -13,  30,  59,  18, -47,
+		-16,  37,  43,  40,  35,  50,  37,  -2,
+		 -4,   5,  19,  50,  37,  37,   7,  -2,
+		 -6,  13,  13,  26,  34,  12,  10,   4,
+		  0,  15,  15,  15,  14,  27,  18,  10,
+		  4,  15,  16,   0,   7,  21,  33,   1,
+		-33,  -3, -14, -21, -13, -12, -39, -21,
+	};
+
+	private static final int[] EG_BISHOP = {
+		-14, -21, -11,  -8,  -7,  -9, -17, -24,
+		 -8,  -4,   7, -12,  -3, -13,  -4, -14,
+		  2,  -8,   0,  -1,  -2,   6,   0,   4,
+		 -3,   9,  12,   9,  14,  10,   3,   2,
+		 -6,   3,  13,  19,   7,  10,  -3,  -9,
+		-12,  -3,   8,  10,  13,   3,  -7, -15,
+		-14, -18,  -7,  -1,   4,  -9, -15, -27,
+		-23,  -9, -23,  -5,  -9, -16,  -5, -17,
+	};
+
+	private static final int[] MG_ROOK = {
+		 32,  42,  32,  51,  63,   9,  31,  43,
+		 27,  32,  58,  62,  80,  67,  26,  44,
+		 -5,  19,  26,  36,  17,  45,  61,  16,
+		-24, -11,   7,  26,  24,  35,  -8, -20,
+		-36, -26, -12,  -1,   9,  -7,   6, -23,
+		-45, -25, -16, -17,   3,   0,  -5, -33,
+		-44, -16, -20,  -9,  -1,  11,  -6, -71,
+		-19, -13,   1,  17,  16,   7, -37, -26,
+	};
+
+	private static final int[] EG_ROOK = {
+		 13,  10,  18,  15,  12,  12,   8,   5,
+		 11,  13,  13,  11,  -3,   3,   8,   3,
+		  7,   7,   7,   5,   4,  -3,  -5,  -3,
+		  4,   3,  13,   1,   2,   1,  -1,   2,
+		  3,   5,   8,   4,  -5,  -6,  -8, -11,
+		 -4,   0,  -5,  -1,  -7, -12,  -8, -16,
+		 -6,  -6,   0,   2,  -9,  -9, -11,  -3,
+		 -9,   2,   3,  -1,  -5, -13,   4, -20,
+	};
+
+	private static final int[] MG_QUEEN = {
+		-28,   0,  29,  12,  59,  44,  43,  45,
+		-24, -39,  -5,   1, -16,  57,  28,  54,
+		-13, -17,   7,   8,  29,  56,  47,  57,
+		-27, -27, -16, -16,  -1,  17,  -2,   1,
+		 -9, -26,  -9, -10,  -2,  -4,   3,  -3,
+		-14,   2, -11,  -2,  -5,   2,  14,   5,
+		-35,  -8,  11,   2,   8,  15,  -3,   1,
+		 -1, -18,  -9,  10, -15, -25, -31, -50,
+	};
+
+	private static final int[] EG_QUEEN = {
+		 -9,  22,  22,  27,  27,  19,  10,  20,
+		-17,  20,  32,  41,  58,  25,  30,   0,
+		-20,   6,   9,  49,  47,  35,  19,   9,
+		  3,  22,  24,  45,  57,  40,  57,  36,
+		-18,  28,  19,  47,  31,  34,  39,  23,
+		-16, -27,  15,   6,   9,  17,  10,   5,
+		-22, -23, -30, -16, -16, -23, -36, -32,
+		-33, -28, -22, -43,  -5, -32, -20, -41,
+	};
+
+	private static final int[] MG_KING = {
+		-65,  23,  16, -15, -56, -34,   2,  13,
+		 29,  -1, -20,  -7,  -8,  -4, -38, -29,
+		 -9,  24,   2, -16, -20,   6,  22, -22,
+		-17, -20, -12, -27, -30, -25, -14, -36,
+		-49,  -1, -27, -39, -46, -44, -33, -51,
+		-14, -14, -22, -46, -44, -30, -15, -27,
+		  1,   7,  -8, -64, -43, -16,   9,   8,
+		-15,  36,  12, -54,   8, -28,  24,  14,
+	};
+
+	private static final int[] EG_KING = {
+		-74, -35, -18, -18, -11,  15,   4, -17,
+		-12,  17,  14,  17,  17,  38,  23,  11,
+		 10,  17,  23,  15,  20,  45,  44,  13,
+		 -8,  22,  24,  27,  26,  33,  26,   3,
+		-18,  -4,  21,  24,  27,  23,   9, -11,
+		-19,  -3,  11,  21,  23,  16,   7,  -9,
+		-27, -11,   4,  13,  14,   4,  -5, -17,
+		-53, -34, -21, -11, -28, -14, -24, -43,
+	};
+
+	static {
+		int[][] mg = {MG_PAWN, MG_KNIGHT, MG_BISHOP, MG_ROOK, MG_QUEEN, MG_KING};
+		int[][] eg = {EG_PAWN, EG_KNIGHT, EG_BISHOP, EG_ROOK, EG_QUEEN, EG_KING};
+		for (int type = 0; type < 6; type++) {
+			for (int sq = 0; sq < 64; sq++) {
+				// The tables start at a8, squares at a1; black sees them flipped
+				MG[Position.code(WHITE, type)][sq] = MG_VALUES[type] + mg[type][sq ^ 56];
+				EG[Position.code(WHITE, type)][sq] = EG_VALUES[type] + eg[type][sq ^ 56];
+				MG[Position.code(BLACK, type)][sq] = -MG_VALUES[type] - mg[type][sq];
+				EG[Position.code(BLACK, type)][sq] = -EG_VALUES[type] - eg[type][sq];
+			}
+		}
+
+		for (int file = 0; file < 8; file++)
+			FILES[file] = 0x0101010101010101L << file;
+		for (int file = 0; file < 8; file++)
+			ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0) | (file < 7 ? FILES[file + 1] : 0);
+		for (int sq = 0; sq < 64; sq++) {
+			int row = sq >> 3;
+			int file = sq & 7;
+			long above = row == 7 ? 0 : -1L << ((row + 1) * 8);
+			long below = (1L << (row * 8)) - 1;
+			FORWARD[WHITE][sq] = above & FILES[file];
+			FORWARD[BLACK][sq] = below & FILES[file];
+			PASSED[WHITE][sq] = above & (FILES[file] | ADJACENT_FILES[file]);
+			PASSED[BLACK][sq] = below & (FILES[file] | ADJACENT_FILES[file]);
+			SUPPORT[WHITE][sq] = ~above & ADJACENT_FILES[file];
+			SUPPORT[BLACK][sq] = ~below & ADJACENT_FILES[file];
+			long twoAbove = (row < 7 ? 0xFFL << ((row + 1) * 8) : 0) | (row < 6 ? 0xFFL << ((row + 2) * 8) : 0);
+			long twoBelow = (row > 0 ? 0xFFL << ((row - 1) * 8) : 0) | (row > 1 ? 0xFFL << ((row - 2) * 8) : 0);
+			SHIELD[WHITE][sq] = twoAbove & (FILES[file] | ADJACENT_FILES[file]);
+			SHIELD[BLACK][sq] = twoBelow & (FILES[file] | ADJACENT_FILES[file]);
+		}
+	}
+
+	/**
+	 * No instances
+	 */
+	private Evaluation() {}
+
+	/**
+	 * Evaluate a position by its incrementally kept material and
+	 * piece-square scores, computing the pawn structure
+	 *
+	 * @param pos	The position
+	 * @return		The score for the side to move
+	 */
+	public static int evaluate(Position pos) { return evaluate(pos, pawnStructure(pos)); }
+
+	/**
+	 * Evaluate a position by its incrementally kept material and
+	 * piece-square scores, looking the pawn structure up
+	 *
+	 * @param pos	The position
+	 * @param pawns	The pawn structure cache
+	 * @return		The score for the side to move
+	 */
+	static int evaluate(Position pos, PawnTable pawns) { return evaluate(pos, pawns.probe(pos)); }
+
+	/**
+	 * Evaluate a position
+	 *
+	 * @param pos		The position
+	 * @param structure	The packed pawn structure score for white
+	 * @return			The score for the side to move
+	 */
+	private static int evaluate(Position pos, int structure) {
+		int score = taper(pos.mgScore() + mg(structure) + shield(pos),
+				pos.egScore() + eg(structure), pos.phase());
+		score = kpk(pos, score);
+		return pos.sideToMove() == WHITE ? score : -score;
+	}
+
+	/**
+	 * Evaluate a position from scratch, going over every square
+	 *
+	 * @param pos	The position
+	 * @return		The score for the side to move, the same as evaluate
+	 */
+	public static int compute(Position pos) {
+		int mg = 0;
+		int eg = 0;
+		int phase = 0;
+		for (int sq = 0; sq < 64; sq++) {
+			int code = pos.pieceOn(sq);
+			if (code == Position.EMPTY) continue;
+			mg += MG[code][sq];
+			eg += EG[code][sq];
+			phase += PHASE[Position.typeOf(code)];
+		}
+		int structure = pawnStructure(pos);
+		int score = taper(mg + mg(structure) + shield(pos), eg + eg(structure), phase);
+		score = kpk(pos, score);
+		return pos.sideToMove() == WHITE ? score : -score;
+	}
+
+	/**
+	 * Correct the score of a king and pawn against king ending by
+	 * the KPK bitbase: a draw is 0, a win is worth much more than the
+	 * pawn. Other positions keep their score.
+	 *
+	 * @param pos	The position
+	 * @param score	The score for white
+	 * @return		The corrected score for white
+	 */
+	private static int kpk(Position pos, int score) {
+		if (Long.bitCount(pos.occupancy()) != 3 || !KpkBitbase.isLoaded()) return score;
+		long white = pos.pieces(WHITE, Position.PAWN);
+		long black = pos.pieces(BLACK, Position.PAWN);
+		// A pawn waiting for the GUI to promote it isn't in the bitbase
+		if ((white | black) == 0 || ((white >>> 56) | (black & 0xFF)) != 0) return score;
+		if (!KpkBitbase.isWin(pos)) return 0;
+		return score + (white != 0 ? KPK_WIN : -KPK_WIN);
+	}
+
+	/**
+	 * Score the pawn structure: passed, isolated, doubled and
+	 * backward pawns. It only depends on the pawns, see PawnTable.
+	 *
+	 * @param pos	The position
+	 * @return		The packed score for white, see score
+	 */
+	static int pawnStructure(Position pos) {
+		int mg = 0;
+		int eg = 0;
+		for (int color = WHITE; color <= BLACK; color++) {
+			long own = pos.pieces(color, Position.PAWN);
+			long enemy = pos.pieces(color ^ 1, Position.PAWN);
+			int sign = color == WHITE ? 1 : -1;
+			for (long bits = own; bits != 0; bits &= bits - 1) {
+				int sq = Long.numberOfTrailingZeros(bits);
+				int file = sq & 7;
+				// The rear pawn of a doubled pair pays, the front one may be passed
+				if ((FORWARD[color][sq] & own) != 0) {
+					mg += sign * DOUBLED_MG;
+					eg += sign * DOUBLED_EG;
+				} else if ((PASSED[color][sq] & enemy) == 0) {
+					int rank = color == WHITE ? sq >> 3 : 7 - (sq >> 3);
+					mg += sign * PASSED_MG[rank];
+					eg += sign * PASSED_EG[rank];
+				}
+				if ((ADJACENT_FILES[file] & own) == 0) {
+					mg += sign * ISOLATED_MG;
+					eg += sign * ISOLATED_EG;
+				} else if ((SUPPORT[color][sq] & own) == 0) {
+					// No pawn can back it up, and an enemy pawn guards the square in
+					// front; a pawn waiting for the GUI to promote it has none
+					int stop = sq + (color == WHITE ? 8 : -8);
+					if (stop >= 0 && stop < 64 && (Attacks.pawn(color, stop) & enemy) != 0) {
+						mg += sign * BACKWARD_MG;
+						eg += sign * BACKWARD_EG;
+					}
+				}
+			}
+		}
+		return score(mg, eg);
+	}
+
+	/**
+	 * Score the pawns in front of each king, for the middlegame. It
+	 * depends on the kings too, so it isn't cached with the pawns.
+	 *
+	 * @param pos	The position
+	 * @return		The middlegame score for white
+	 */
+	private static int shield(Position pos) {
+		int mg = 0;
+		for (int color = WHITE; color <= BLACK; color++) {
+			long king = pos.pieces(color, Position.KING);
+			if (king == 0) continue;
+			int sq = Long.numberOfTrailingZeros(king);
+			int rank = color == WHITE ? sq >> 3 : 7 - (sq >> 3);
+			if (rank > 1) continue;
+			int pawns = Long.bitCount(SHIELD[color][sq] & pos.pieces(color, Position.PAWN));
+			mg += (color == WHITE ? 1 : -1) * SHIELD_MG * pawns;
+		}
+		return mg;
+	}
+
+	/**
+	 * Pack a middlegame and an endgame score into one int
+	 *
+	 * @param mg	The middlegame score
+	 * @param eg	The endgame score
+	 * @return		The packed score
+	 */
+	static int score(int mg, int eg) { return (eg << 16) + mg; }
+
+	/**
+	 * Get the middlegame part of a packed score
+	 *
+	 * @param score	The packed score
+	 * @return		The middlegame score
+	 */
+	static int mg(int score) { return (short) score; }
+
+	/**
+	 * Get the endgame part of a packed score
+	 *
+	 * @param score	The packed score
+	 * @return		The endgame score
+	 */
+	static int eg(int score) { return (score + 0x8000) >> 16; }
+
+	/**
+	 * Blend a middlegame and an endgame score by the game phase
+	 *
+	 * @param mg	The middlegame score
+	 * @param eg	The endgame score
+	 * @param phase	The phase, more than TOTAL_PHASE after promotions
+	 * @return		The blended score
+	 */
+	private static int taper(int mg, int eg, int phase) {
+		phase = Math.min(phase, TOTAL_PHASE);
+		return (mg * phase + eg * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
+	}
+}
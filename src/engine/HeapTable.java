@@ -0,0 +1,41 @@
+package engine;
+
+/**
+ * Transposition table entries in a long array on the heap
+ *
+ * @author Siwen Wang
+ */
+final class HeapTable extends TranspositionTable {
+
+	/**
+	 * The most buckets an array can hold, 4 GB
+	 */
+	static final long MAX_BUCKETS = 1L << 26;
+
+	/**
+	 * Entries as pairs of (hash ^ data, data)
+	 */
+	private final long[] entries;
+
+	/**
+	 * Create a table
+	 *
+	 * @param buckets	The number of buckets, a power of two
+	 */
+	HeapTable(long buckets) {
+		super(buckets);
+		entries = new long[(int) buckets * BUCKET * 2];
+	}
+
+	@Override
+	long read(long i) { return entries[(int) i]; }
+
+	@Override
+	void write(long i, long value) { entries[(int) i] = value; }
+
+	@Override
+	void zero() { java.util.Arrays.fill(entries, 0); }
+
+	@Override
+	public boolean isOffHeap() { return false; }
+}
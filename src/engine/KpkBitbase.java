@@ -0,0 +1,205 @@
+package engine;
+
+import static engine.Position.BLACK;
+import static engine.Position.KING;
+import static engine.Position.PAWN;
+import static engine.Position.WHITE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Whether king and pawn win against king, for every position
+ *
+ * One bit per position of the pawn's side: the side to move, the
+ * pawn on files a-d of ranks 2-7 (a pawn on e-h is mirrored), the
+ * king with the pawn and the lone king, 2 * 24 * 64 * 64 bits or
+ * 24 KB. A position where the black pawn is the strong side is
+ * flipped first. Illegal positions are draws.
+ *
+ * The bits are read from the resource kpk.bin next to this class,
+ * little endian longs built by running main, and probed with a
+ * shift and a mask. Without the resource nothing is known, see
+ * isLoaded.
+ *
+ * @author Siwen Wang
+ */
+public final class KpkBitbase {
+
+	/**
+	 * The resource holding the bits
+	 */
+	public static final String RESOURCE = "kpk.bin";
+
+	/**
+	 * The number of positions, one bit each
+	 */
+	static final int SIZE = 2 * 24 * 64 * 64;
+
+	/**
+	 * The bits, 1 for a win of the pawn's side
+	 */
+	private static final long[] BITS = new long[SIZE / 64];
+
+	/**
+	 * Whether the resource was read
+	 */
+	private static final boolean LOADED = load();
+
+	/**
+	 * No instances
+	 */
+	private KpkBitbase() {}
+
+	/**
+	 * Check whether the bits were read, so probes mean something
+	 *
+	 * @return	true if the kpk.bin resource was found
+	 */
+	public static boolean isLoaded() { return LOADED; }
+
+	/**
+	 * Check whether the side with the pawn wins a king and pawn
+	 * against king position
+	 *
+	 * @param pos	The position, with only two kings and one pawn, not
+	 * 				on its last rank
+	 * @return		true if it's a win, false for a draw or if nothing is loaded
+	 */
+	public static boolean isWin(Position pos) {
+		long pawn = pos.pieces(WHITE, PAWN);
+		int strong = pawn != 0 ? WHITE : BLACK;
+		if (pawn == 0) pawn = pos.pieces(BLACK, PAWN);
+		// Turn the board over for a black pawn, so it's white's going up
+		int flip = strong == WHITE ? 0 : 56;
+		return probe(pos.sideToMove() ^ strong, pos.king(strong) ^ flip,
+				pos.king(strong ^ 1) ^ flip, Long.numberOfTrailingZeros(pawn) ^ flip);
+	}
+
+	/**
+	 * Look a position up, the pawn's side as white
+	 *
+	 * @param us	WHITE if the pawn's side is to move
+	 * @param wk	The square of the pawn's king
+	 * @param bk	The square of the lone king
+	 * @param pawn	The square of the pawn, on ranks 2-7
+	 * @return		true if it's a win
+	 */
+	static boolean probe(int us, int wk, int bk, int pawn) {
+		int i = index(us, wk, bk, pawn);
+		return (BITS[i >>> 6] >>> i & 1) != 0;
+	}
+
+	/**
+	 * Get the bit of a position, the pawn's side as white
+	 *
+	 * @param us	WHITE if the pawn's side is to move
+	 * @param wk	The square of the pawn's king
+	 * @param bk	The square of the lone king
+	 * @param pawn	The square of the pawn, on ranks 2-7
+	 * @return		The bit index
+	 */
+	private static int index(int us, int wk, int bk, int pawn) {
+		// Mirror files e-h to a-d, all at once so nothing branches
+		int mirror = ((pawn & 7) >> 2) * 7;
+		int file = (pawn & 7) ^ mirror;
+		return ((us * 24 + ((pawn >> 3) - 1) * 4 + file) * 64 + (wk ^ mirror)) * 64 + (bk ^ mirror);
+	}
+
+	/**
+	 * Fill the bits from the resource
+	 *
+	 * @return	true if it was read
+	 */
+	private static boolean load() {
+		try (InputStream in = KpkBitbase.class.getResourceAsStream(RESOURCE)) {
+			if (in != null) {
+				byte[] bytes = in.readAllBytes();
+				if (bytes.length == SIZE / 8) {
+					ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(BITS);
+					return true;
+				}
+				System.err.println("Bad " + RESOURCE + " resource: " + bytes.length + " bytes");
+			}
+		} catch (IOException e) {
+			System.err.println("Bad " + RESOURCE + " resource: " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Build the bits from the KPvK tablebase
+	 *
+	 * @param threads		The number of threads building it
+	 * @return				The bits
+	 * @throws IOException	If the temporary tablebase files can't be written
+	 */
+	static long[] build(int threads) throws IOException {
+		Path dir = Files.createTempDirectory("kpk");
+		TablebaseGenerator generator = new TablebaseGenerator(dir, threads);
+		try {
+			generator.generate("KPvK");
+		} finally {
+			generator.shutdown();
+		}
+		byte[] values = generator.values("KPvK");
+		TablebaseIndex table = new TablebaseIndex("KPvK");
+		long[] bits = new long[SIZE / 64];
+		Position pos = new Position();
+		for (int us = WHITE; us <= BLACK; us++) {
+			for (int pawn = 8; pawn < 56; pawn++) {
+				if ((pawn & 7) > 3) continue;
+				for (int wk = 0; wk < 64; wk++) {
+					for (int bk = 0; bk < 64; bk++) {
+						if (wk == bk || wk == pawn || bk == pawn) continue;
+						pos.put(wk, Position.code(WHITE, KING));
+						pos.put(bk, Position.code(BLACK, KING));
+						pos.put(pawn, Position.code(WHITE, PAWN));
+						pos.setSideToMove(us);
+						// The side not to move may not be in check
+						if (pos.attackersTo(pos.king(us ^ 1), us) == 0) {
+							byte value = values[table.index(pos, false)];
+							if (us == WHITE ? value > 0 : value < 0) {
+								int i = index(us, wk, bk, pawn);
+								bits[i >>> 6] |= 1L << i;
+							}
+						}
+						pos.remove(wk);
+						pos.remove(bk);
+						pos.remove(pawn);
+					}
+				}
+			}
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files)
+				Files.delete(file);
+		}
+		Files.delete(dir);
+		return bits;
+	}
+
+	/**
+	 * Build the kpk.bin resource, run once when the indexing changes
+	 *
+	 * @param args	The path to write, src/engine/kpk.bin by default
+	 * @throws IOException	If it can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : "src/engine/" + RESOURCE);
+		long[] bits = build(Runtime.getRuntime().availableProcessors());
+		ByteBuffer bytes = ByteBuffer.allocate(SIZE / 8).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asLongBuffer().put(bits);
+		Files.write(file, bytes.array());
+		int wins = 0;
+		for (long word : bits)
+			wins += Long.bitCount(word);
+		System.out.println(wins + " wins of " + SIZE + " positions written to " + file);
+	}
+}
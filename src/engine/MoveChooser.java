@@ -0,0 +1,18 @@
+package engine;
+
+/**
+ * Something that picks the move for a computer player
+ *
+ * @author Siwen Wang
+ */
+public interface MoveChooser {
+
+	/**
+	 * Choose a move for the side to move
+	 *
+	 * @param pos		The position, not changed
+	 * @param timeLimit	The time the move may take in nanoseconds, 0 for no limit
+	 * @return			The packed move (see Moves), or Moves.NONE if there's none
+	 */
+	int chooseMove(Position pos, long timeLimit);
+}
@@ -0,0 +1,361 @@
+package engine;
+
+import static engine.Position.BISHOP;
+import static engine.Position.KING;
+import static engine.Position.KNIGHT;
+import static engine.Position.PAWN;
+import static engine.Position.QUEEN;
+import static engine.Position.ROOK;
+import static engine.Position.WHITE;
+
+/**
+ * Move generation into caller supplied int buffers
+ *
+ * Nothing is allocated per call: moves are written as packed
+ * ints (see Moves) and the number of moves is returned. Only
+ * legal moves are generated.
+ *
+ * @author Siwen Wang
+ */
+public final class MoveGen {
+
+	/**
+	 * Enough room for the moves of any position
+	 */
+	public static final int MAX_MOVES = 256;
+
+	/**
+	 * Useful masks
+	 */
+	static final long FILE_A = 0x0101010101010101L;
+	static final long FILE_H = FILE_A << 7;
+	static final long RANK_1 = 0xFFL;
+	static final long RANK_3 = RANK_1 << 16;
+	static final long RANK_6 = RANK_1 << 40;
+	static final long RANK_8 = RANK_1 << 56;
+
+	/**
+	 * No instances
+	 */
+	private MoveGen() {}
+
+	/**
+	 * Kinds of moves to generate
+	 */
+	static final int ALL = 0;
+	static final int CAPTURES = 1;
+	static final int QUIETS = 2;
+
+	/**
+	 * Generate the legal moves of the side to move
+	 *
+	 * @param pos	The position
+	 * @param moves	The buffer to write to, at least MAX_MOVES long
+	 * @return		The number of moves written
+	 */
+	public static int generate(Position pos, int[] moves) { return generate(pos, moves, ALL, ~0L); }
+
+	/**
+	 * Generate the legal captures and queen promotions of the side
+	 * to move, for the quiescence search. The quiet moves are never
+	 * built.
+	 *
+	 * @param pos	The position
+	 * @param moves	The buffer to write to, at least MAX_MOVES long
+	 * @return		The number of moves written
+	 */
+	public static int generateCaptures(Position pos, int[] moves) {
+		return generate(pos, moves, CAPTURES, ~0L);
+	}
+
+	/**
+	 * Generate the legal moves generateCaptures leaves out: quiet
+	 * moves, castles and under promotions
+	 *
+	 * @param pos	The position
+	 * @param moves	The buffer to write to, at least MAX_MOVES long
+	 * @return		The number of moves written
+	 */
+	public static int generateQuiets(Position pos, int[] moves) {
+		return generate(pos, moves, QUIETS, ~0L);
+	}
+
+	/**
+	 * Check whether a move, say from the hash table, is legal
+	 * here. Only the moves of its origin square are generated.
+	 *
+	 * @param pos		The position
+	 * @param move		The packed move
+	 * @param scratch	A buffer, at least MAX_MOVES long
+	 * @return			true if the move is legal
+	 */
+	public static boolean isLegal(Position pos, int move, int[] scratch) {
+		if (move == Moves.NONE) return false;
+		int n = generate(pos, scratch, ALL, 1L << Moves.from(move));
+		for (int i = 0; i < n; i++) {
+			if (scratch[i] == move) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Generate legal moves.
+	 * The checkers and pinned pieces are found once, then every
+	 * piece only gets the destinations that answer the check and
+	 * stay on its pin ray, so no move has to be tried and undone.
+	 *
+	 * @param pos	The position
+	 * @param moves	The buffer to write to, at least MAX_MOVES long
+	 * @param mode	ALL, CAPTURES or QUIETS
+	 * @param from	The origin squares to generate the moves of
+	 * @return		The number of moves written
+	 */
+	private static int generate(Position pos, int[] moves, int mode, long from) {
+		int us = pos.sideToMove();
+		int them = us ^ 1;
+		long kingBit = pos.pieces(us, KING);
+		if (kingBit == 0) return 0;
+		int ksq = Long.numberOfTrailingZeros(kingBit);
+		long occupied = pos.occupancy();
+		// The enemy king is never captured in a legal game
+		long enemies = pos.occupancy(them) & ~pos.pieces(them, KING);
+		long available = mode == CAPTURES ? enemies : mode == QUIETS ? ~occupied : enemies | ~occupied;
+		long checkers = pos.attackersTo(ksq, them);
+
+		// King moves, tested with the king lifted off so it can't shield itself
+		int n = 0;
+		long withoutKing = occupied ^ kingBit;
+		for (long b = (kingBit & from) != 0 ? Attacks.king(ksq) & available : 0; b != 0; b &= b - 1) {
+			int to = Long.numberOfTrailingZeros(b);
+			if (pos.attackersTo(to, them, withoutKing) == 0)
+				moves[n++] = Moves.make(ksq, to, Moves.NORMAL);
+		}
+		if (Long.bitCount(checkers) > 1) return n;
+
+		// In check, the other pieces must capture the checker or block
+		long checkMask = ~0L;
+		if (checkers != 0)
+			checkMask = checkers | Attacks.between(ksq, Long.numberOfTrailingZeros(checkers));
+		long targets = available & checkMask;
+		long pinned = pinned(pos, us, ksq);
+
+		for (long b = pos.pieces(us, KNIGHT) & ~pinned & from; b != 0; b &= b - 1) {
+			int sq = Long.numberOfTrailingZeros(b);
+			n = add(moves, n, sq, Attacks.knight(sq) & targets);
+		}
+		long diagonal = (pos.pieces(us, BISHOP) | pos.pieces(us, QUEEN)) & from;
+		for (long b = diagonal; b != 0; b &= b - 1) {
+			int sq = Long.numberOfTrailingZeros(b);
+			n = add(moves, n, sq, Attacks.bishop(sq, occupied) & targets & pinRay(pinned, ksq, sq));
+		}
+		long straight = (pos.pieces(us, ROOK) | pos.pieces(us, QUEEN)) & from;
+		for (long b = straight; b != 0; b &= b - 1) {
+			int sq = Long.numberOfTrailingZeros(b);
+			n = add(moves, n, sq, Attacks.rook(sq, occupied) & targets & pinRay(pinned, ksq, sq));
+		}
+
+		long pawns = pos.pieces(us, PAWN) & from;
+		n = pawnMoves(moves, n, us, pawns & ~pinned, ~occupied, enemies, checkMask, mode);
+		for (long b = pawns & pinned; b != 0; b &= b - 1) {
+			int sq = Long.numberOfTrailingZeros(b);
+			n = pawnMoves(moves, n, us, 1L << sq, ~occupied, enemies,
+					checkMask & Attacks.line(ksq, sq), mode);
+		}
+		if (mode != QUIETS) n = enPassant(pos, moves, n, us, ksq, pawns);
+		if (checkers == 0 && mode != CAPTURES && (kingBit & from) != 0)
+			n = castles(pos, moves, n, us, occupied);
+		return n;
+	}
+
+	/**
+	 * Find the pieces of the side to move pinned to their king
+	 *
+	 * @param pos	The position
+	 * @param us	The side to move
+	 * @param ksq	The square of our king
+	 * @return		The set of pinned pieces
+	 */
+	private static long pinned(Position pos, int us, int ksq) {
+		int them = us ^ 1;
+		long enemies = pos.occupancy(them);
+		long snipers = (Attacks.rook(ksq, enemies) & (pos.pieces(them, ROOK) | pos.pieces(them, QUEEN)))
+				| (Attacks.bishop(ksq, enemies) & (pos.pieces(them, BISHOP) | pos.pieces(them, QUEEN)));
+		long occupied = pos.occupancy();
+		long pinned = 0;
+		for (; snipers != 0; snipers &= snipers - 1) {
+			long blockers = Attacks.between(ksq, Long.numberOfTrailingZeros(snipers)) & occupied;
+			if (blockers != 0 && (blockers & (blockers - 1)) == 0)
+				pinned |= blockers & pos.occupancy(us);
+		}
+		return pinned;
+	}
+
+	/**
+	 * Get the squares a piece may move to because of pins
+	 *
+	 * @param pinned	The pinned pieces
+	 * @param ksq		The square of our king
+	 * @param sq		The square of the piece
+	 * @return			Every square if it's not pinned, else its pin line
+	 */
+	private static long pinRay(long pinned, int ksq, int sq) {
+		return (pinned & (1L << sq)) == 0 ? ~0L : Attacks.line(ksq, sq);
+	}
+
+	/**
+	 * Generate the pawn moves, a whole set at a time
+	 *
+	 * @param moves		The buffer
+	 * @param n			The number of moves already in the buffer
+	 * @param us		The side to move
+	 * @param pawns		The pawns to move
+	 * @param empty		The empty squares
+	 * @param enemies	The pieces that can be captured
+	 * @param mask		The destinations allowed by checks and pins
+	 * @param mode		ALL, CAPTURES or QUIETS
+	 * @return			The new number of moves
+	 */
+	private static int pawnMoves(int[] moves, int n, int us, long pawns, long empty,
+			long enemies, long mask, int mode) {
+		int up = us == WHITE ? 8 : -8;
+		long push, doublePush, left, right;
+		if (us == WHITE) {
+			push = (pawns << 8) & empty;
+			doublePush = ((push & RANK_3) << 8) & empty;
+			left = ((pawns & ~FILE_A) << 7) & enemies;
+			right = ((pawns & ~FILE_H) << 9) & enemies;
+		} else {
+			push = (pawns >>> 8) & empty;
+			doublePush = ((push & RANK_6) >>> 8) & empty;
+			left = ((pawns & ~FILE_A) >>> 9) & enemies;
+			right = ((pawns & ~FILE_H) >>> 7) & enemies;
+		}
+		long lastRank = RANK_1 | RANK_8;
+		push &= mask;
+		doublePush &= mask;
+		left &= mask;
+		right &= mask;
+
+		if (mode != CAPTURES) {
+			n = addPawn(moves, n, push & ~lastRank, up);
+			n = addPawn(moves, n, doublePush, 2 * up);
+		}
+		if (mode != QUIETS) {
+			n = addPawn(moves, n, left & ~lastRank, up - 1);
+			n = addPawn(moves, n, right & ~lastRank, up + 1);
+		}
+		// Captures get the queen promotions, quiets the under promotions
+		int highest = mode == QUIETS ? ROOK : QUEEN;
+		int lowest = mode == CAPTURES ? QUEEN : KNIGHT;
+		n = addPromotions(moves, n, push & lastRank, up, highest, lowest);
+		n = addPromotions(moves, n, left & lastRank, up - 1, highest, lowest);
+		n = addPromotions(moves, n, right & lastRank, up + 1, highest, lowest);
+		return n;
+	}
+
+	/**
+	 * Generate the en passant captures. These are checked by
+	 * lifting both pawns off the board, since the captured pawn
+	 * can be the checker or the last piece shielding the king.
+	 *
+	 * @param pos	The position
+	 * @param moves	The buffer
+	 * @param n		The number of moves already in the buffer
+	 * @param us	The side to move
+	 * @param ksq	The square of our king
+	 * @param pawns	The pawns that may capture
+	 * @return		The new number of moves
+	 */
+	private static int enPassant(Position pos, int[] moves, int n, int us, int ksq, long pawns) {
+		int ep = pos.epSquare();
+		if (ep < 0) return n;
+		int captured = ep + (us == WHITE ? -8 : 8);
+		// Our pawns that attack the square are where an enemy pawn on it would attack
+		for (long b = Attacks.pawn(us ^ 1, ep) & pawns; b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			long occ = (pos.occupancy() ^ (1L << from) ^ (1L << captured)) | (1L << ep);
+			if ((pos.attackersTo(ksq, us ^ 1, occ) & ~(1L << captured)) == 0)
+				moves[n++] = Moves.make(from, ep, Moves.EN_PASSANT);
+		}
+		return n;
+	}
+
+	/**
+	 * Generate the castling moves of a king that's not in check
+	 *
+	 * @param pos		The position
+	 * @param moves		The buffer
+	 * @param n			The number of moves already in the buffer
+	 * @param us		The side to move
+	 * @param occupied	All occupied squares
+	 * @return			The new number of moves
+	 */
+	private static int castles(Position pos, int[] moves, int n, int us, long occupied) {
+		int rights = pos.castlingRights();
+		int home = us == WHITE ? 4 : 60;
+		int shortRight = us == WHITE ? Position.WHITE_OO : Position.BLACK_OO;
+		int longRight = us == WHITE ? Position.WHITE_OOO : Position.BLACK_OOO;
+		if ((rights & shortRight) != 0 && (occupied & (3L << (home + 1))) == 0
+				&& pos.attackersTo(home + 1, us ^ 1) == 0
+				&& pos.attackersTo(home + 2, us ^ 1) == 0)
+			moves[n++] = Moves.make(home, home + 2, Moves.CASTLE);
+		if ((rights & longRight) != 0 && (occupied & (7L << (home - 3))) == 0
+				&& pos.attackersTo(home - 1, us ^ 1) == 0
+				&& pos.attackersTo(home - 2, us ^ 1) == 0)
+			moves[n++] = Moves.make(home, home - 2, Moves.CASTLE);
+		return n;
+	}
+
+	/**
+	 * Add a move from one square to every destination in a set
+	 *
+	 * @param moves		The buffer
+	 * @param n			The number of moves already in the buffer
+	 * @param from		The origin square
+	 * @param targets	The destinations
+	 * @return			The new number of moves
+	 */
+	private static int add(int[] moves, int n, int from, long targets) {
+		for (; targets != 0; targets &= targets - 1)
+			moves[n++] = Moves.make(from, Long.numberOfTrailingZeros(targets), Moves.NORMAL);
+		return n;
+	}
+
+	/**
+	 * Add pawn moves to every destination in a set
+	 *
+	 * @param moves		The buffer
+	 * @param n			The number of moves already in the buffer
+	 * @param targets	The destinations
+	 * @param offset	Destination minus origin
+	 * @return			The new number of moves
+	 */
+	private static int addPawn(int[] moves, int n, long targets, int offset) {
+		for (; targets != 0; targets &= targets - 1) {
+			int to = Long.numberOfTrailingZeros(targets);
+			moves[n++] = Moves.make(to - offset, to, Moves.NORMAL);
+		}
+		return n;
+	}
+
+	/**
+	 * Add the promotions to every destination in a set
+	 *
+	 * @param moves		The buffer
+	 * @param n			The number of moves already in the buffer
+	 * @param targets	The destinations
+	 * @param offset	Destination minus origin
+	 * @param highest	The highest piece type to promote to
+	 * @param lowest	The lowest piece type to promote to
+	 * @return			The new number of moves
+	 */
+	private static int addPromotions(int[] moves, int n, long targets, int offset,
+			int highest, int lowest) {
+		for (; targets != 0; targets &= targets - 1) {
+			int to = Long.numberOfTrailingZeros(targets);
+			for (int type = highest; type >= lowest; type--)
+				moves[n++] = Moves.promotion(to - offset, to, type);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,243 @@
+package engine;
+
+import static engine.Position.EMPTY;
+import static engine.Position.KING;
+import static engine.Position.PAWN;
+
+/**
+ * Hands out the moves of a position one at a time, best guesses first
+ *
+ * The moves come in stages, and a stage is only generated when the
+ * ones before it are used up, so a cutoff by the hash move or a
+ * capture never pays for the quiet moves:
+ *	1. the hash move
+ *	2. captures and queen promotions, most valuable victim first,
+ *	   then least valuable attacker (MVV-LVA), if they don't lose
+ *	   material by static exchange evaluation
+ *	3. the two killer moves of the ply
+ *	4. the other quiet moves, by their history score
+ *	5. the losing captures, left out altogether for quiescence
+ * Within a stage, each call picks the best remaining move by one
+ * pass of selection sort, so moves never reached are never sorted.
+ *
+ * Each ply of a search owns one picker and reuses it.
+ *
+ * @author Siwen Wang
+ */
+final class MovePicker {
+
+	/**
+	 * Stages
+	 */
+	private static final int HASH = 0;
+	private static final int CAPTURES_INIT = 1;
+	private static final int CAPTURES = 2;
+	private static final int KILLERS = 3;
+	private static final int QUIETS_INIT = 4;
+	private static final int QUIETS = 5;
+	private static final int BAD_CAPTURES = 6;
+	private static final int DONE = 7;
+
+	/**
+	 * The moves of the current stage and their scores
+	 */
+	private final int[] moves = new int[MoveGen.MAX_MOVES];
+	private final int[] scores = new int[MoveGen.MAX_MOVES];
+
+	/**
+	 * The captures that lose material, put off to the end
+	 */
+	private final int[] badCaptures = new int[MoveGen.MAX_MOVES];
+	private int badCount;
+
+	/**
+	 * The number of moves in the current stage and the next one to pick
+	 */
+	private int count;
+	private int next;
+
+	/**
+	 * The stage to pick from
+	 */
+	private int stage;
+
+	/**
+	 * The position the moves are for
+	 */
+	private Position pos;
+
+	/**
+	 * The moves handed out before their stage, skipped in it
+	 */
+	private int hashMove;
+	private int killer1;
+	private int killer2;
+
+	/**
+	 * Which killer to try next, 0 or 1
+	 */
+	private int killerIndex;
+
+	/**
+	 * Whether only captures are wanted
+	 */
+	private boolean capturesOnly;
+
+	/**
+	 * The history scores by side, origin and destination
+	 */
+	private int[][][] history;
+
+	/**
+	 * Start picking the moves of a position
+	 *
+	 * @param pos			The position
+	 * @param hashMove		The move from the transposition table, or Moves.NONE
+	 * @param killer1		The first killer of the ply, or Moves.NONE
+	 * @param killer2		The second killer of the ply, or Moves.NONE
+	 * @param history		The history scores, [side][from][to]
+	 * @param capturesOnly	Whether to stop after the captures
+	 */
+	void init(Position pos, int hashMove, int killer1, int killer2, int[][][] history,
+			boolean capturesOnly) {
+		this.pos = pos;
+		this.hashMove = hashMove;
+		this.killer1 = killer1;
+		this.killer2 = killer2;
+		this.history = history;
+		this.capturesOnly = capturesOnly;
+		killerIndex = 0;
+		badCount = 0;
+		stage = HASH;
+	}
+
+	/**
+	 * Get the next move
+	 *
+	 * @return	The packed move, or Moves.NONE when there are no more
+	 */
+	int next() {
+		while (true) {
+			switch (stage) {
+			case HASH:
+				stage = CAPTURES_INIT;
+				if (MoveGen.isLegal(pos, hashMove, moves)
+						&& (!capturesOnly || !isQuiet(pos, hashMove)))
+					return hashMove;
+				hashMove = Moves.NONE;
+				break;
+			case CAPTURES_INIT:
+				count = MoveGen.generateCaptures(pos, moves);
+				for (int i = 0; i < count; i++)
+					scores[i] = mvvLva(moves[i]);
+				next = 0;
+				stage = CAPTURES;
+				break;
+			case CAPTURES:
+				while (next < count) {
+					int move = pickBest();
+					if (move == hashMove) continue;
+					if (losesMaterial(move))
+						badCaptures[badCount++] = move;
+					else return move;
+				}
+				stage = capturesOnly ? DONE : KILLERS;
+				break;
+			case KILLERS:
+				while (killerIndex < 2) {
+					int killer = killerIndex++ == 0 ? killer1 : killer2;
+					if (killer != hashMove && isQuiet(pos, killer)
+							&& MoveGen.isLegal(pos, killer, moves))
+						return killer;
+				}
+				stage = QUIETS_INIT;
+				break;
+			case QUIETS_INIT:
+				count = MoveGen.generateQuiets(pos, moves);
+				int[][] scoresOfSide = history[pos.sideToMove()];
+				for (int i = 0; i < count; i++)
+					scores[i] = scoresOfSide[Moves.from(moves[i])][Moves.to(moves[i])];
+				next = 0;
+				stage = QUIETS;
+				break;
+			case QUIETS:
+				while (next < count) {
+					int move = pickBest();
+					if (move != hashMove && move != killer1 && move != killer2) return move;
+				}
+				next = 0;
+				stage = BAD_CAPTURES;
+				break;
+			case BAD_CAPTURES:
+				if (next < badCount) return badCaptures[next++];
+				stage = DONE;
+				break;
+			default:
+				return Moves.NONE;
+			}
+		}
+	}
+
+	/**
+	 * Move the best scored of the remaining moves to the front, one
+	 * pass of selection sort, and take it
+	 *
+	 * @return	The move
+	 */
+	private int pickBest() {
+		int best = next;
+		for (int i = next + 1; i < count; i++) {
+			if (scores[i] > scores[best]) best = i;
+		}
+		int move = moves[best];
+		moves[best] = moves[next];
+		scores[best] = scores[next];
+		next++;
+		return move;
+	}
+
+	/**
+	 * Get the MVV-LVA order of a capture or promotion, higher first
+	 *
+	 * @param move	The move
+	 * @return		The order
+	 */
+	private int mvvLva(int move) {
+		int target = pos.pieceOn(Moves.to(move));
+		int victim = Moves.kind(move) == Moves.EN_PASSANT ? PAWN
+				: target == EMPTY ? -1 : Position.typeOf(target);
+		int attacker = Position.typeOf(pos.pieceOn(Moves.from(move)));
+		int promotion = Moves.kind(move) == Moves.PROMOTION ? Moves.promotionType(move) : 0;
+		return (victim + 1 + promotion) * 8 - attacker;
+	}
+
+	/**
+	 * Check whether a capture loses material. Taking a piece worth
+	 * as much as the attacker, or with the king, which only takes
+	 * undefended pieces, never does, so only the others need SEE.
+	 *
+	 * @param move	The capture
+	 * @return		true if it loses material
+	 */
+	private boolean losesMaterial(int move) {
+		if (Moves.kind(move) != Moves.NORMAL) return false;
+		int attacker = Position.typeOf(pos.pieceOn(Moves.from(move)));
+		int victim = Position.typeOf(pos.pieceOn(Moves.to(move)));
+		if (attacker == KING || Evaluation.VALUES[victim] >= Evaluation.VALUES[attacker])
+			return false;
+		return pos.see(move) < 0;
+	}
+
+	/**
+	 * Check whether a move is quiet: no capture and no promotion
+	 *
+	 * @param pos	The position
+	 * @param move	The move
+	 * @return		true if it's quiet
+	 */
+	static boolean isQuiet(Position pos, int move) {
+		int kind = Moves.kind(move);
+		return pos.pieceOn(Moves.to(move)) == EMPTY
+				&& kind != Moves.EN_PASSANT && kind != Moves.PROMOTION;
+	}
+}
@@ -0,0 +1,117 @@
+package engine;
+
+/**
+ * Packed int encoding of a move
+ *
+ * bits 0-5	 origin square
+ * bits 6-11	 destination square
+ * bits 12-13	 kind (normal, promotion, en passant, castle)
+ * bits 14-15	 promotion piece, knight to queen
+ *
+ * Only the low 16 bits are used, so a move fits in a short.
+ *
+ * @author Siwen Wang
+ */
+public final class Moves {
+
+	/**
+	 * No move, a1 to a1 can never be generated
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * Move kinds
+	 */
+	public static final int NORMAL = 0;
+	public static final int PROMOTION = 1 << 12;
+	public static final int EN_PASSANT = 2 << 12;
+	public static final int CASTLE = 3 << 12;
+
+	/**
+	 * Names of the columns and promotion pieces for printing
+	 */
+	private static final String FILES = "abcdefgh";
+	private static final String PROMOTIONS = "nbrq";
+
+	/**
+	 * No instances
+	 */
+	private Moves() {}
+
+	/**
+	 * Encode a move
+	 *
+	 * @param from	The origin square
+	 * @param to	The destination square
+	 * @param kind	NORMAL, EN_PASSANT or CASTLE
+	 * @return		The packed move
+	 */
+	public static int make(int from, int to, int kind) { return from | to << 6 | kind; }
+
+	/**
+	 * Encode a promotion
+	 *
+	 * @param from	The origin square
+	 * @param to	The destination square
+	 * @param type	The piece type to promote to
+	 * @return		The packed move
+	 */
+	public static int promotion(int from, int to, int type) {
+		return from | to << 6 | PROMOTION | (type - Position.KNIGHT) << 14;
+	}
+
+	/**
+	 * Get the origin square
+	 *
+	 * @param move	The packed move
+	 * @return		The square
+	 */
+	public static int from(int move) { return move & 63; }
+
+	/**
+	 * Get the destination square
+	 *
+	 * @param move	The packed move
+	 * @return		The square
+	 */
+	public static int to(int move) { return (move >>> 6) & 63; }
+
+	/**
+	 * Get the kind of the move
+	 *
+	 * @param move	The packed move
+	 * @return		NORMAL, PROMOTION, EN_PASSANT or CASTLE
+	 */
+	public static int kind(int move) { return move & (3 << 12); }
+
+	/**
+	 * Get the piece type a promotion promotes to
+	 *
+	 * @param move	The packed move
+	 * @return		The piece type
+	 */
+	public static int promotionType(int move) { return ((move >>> 14) & 3) + Position.KNIGHT; }
+
+	/**
+	 * Get the coordinate notation of a move, like e2e4 or e7e8q
+	 *
+	 * @param move	The packed move
+	 * @return		The notation
+	 */
+	public static String toString(int move) {
+		String s = squareName(from(move)) + squareName(to(move));
+		if (kind(move) == PROMOTION)
+			s += PROMOTIONS.charAt(promotionType(move) - Position.KNIGHT);
+		return s;
+	}
+
+	/**
+	 * Get the name of a square, like e4
+	 *
+	 * @param sq	The square
+	 * @return		The name
+	 */
+	public static String squareName(int sq) {
+		return FILES.charAt(sq % 8) + String.valueOf(sq / 8 + 1);
+	}
+}
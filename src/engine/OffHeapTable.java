@@ -0,0 +1,72 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Transposition table entries in direct memory
+ *
+ * The garbage collector never scans or moves direct buffers, so
+ * even a table of many gigabytes adds nothing to GC pauses. A
+ * buffer holds at most 2 GB, so the table is split into chunks of
+ * 1 GB, a whole number of buckets each. The memory is allocated
+ * once, when the table is created, and reused after clear.
+ *
+ * Tables bigger than the heap need -XX:MaxDirectMemorySize.
+ *
+ * @author Siwen Wang
+ */
+final class OffHeapTable extends TranspositionTable {
+
+	/**
+	 * log2 of the number of longs in a full chunk, 1 GB
+	 */
+	private static final int CHUNK_SHIFT = 27;
+
+	/**
+	 * The memory, every chunk but the last one full
+	 */
+	private final ByteBuffer[] chunks;
+
+	/**
+	 * Longs per chunk minus one
+	 */
+	private final long chunkMask;
+
+	/**
+	 * Create a table
+	 *
+	 * @param buckets	The number of buckets, a power of two
+	 */
+	OffHeapTable(long buckets) {
+		super(buckets);
+		long longs = buckets * BUCKET * 2;
+		long perChunk = Math.min(longs, 1L << CHUNK_SHIFT);
+		chunks = new ByteBuffer[(int) (longs / perChunk)];
+		for (int c = 0; c < chunks.length; c++)
+			chunks[c] = ByteBuffer.allocateDirect((int) perChunk * 8).order(ByteOrder.nativeOrder());
+		chunkMask = perChunk - 1;
+	}
+
+	@Override
+	long read(long i) {
+		return chunks[(int) (i >>> CHUNK_SHIFT)].getLong((int) (i & chunkMask) << 3);
+	}
+
+	@Override
+	void write(long i, long value) {
+		chunks[(int) (i >>> CHUNK_SHIFT)].putLong((int) (i & chunkMask) << 3, value);
+	}
+
+	@Override
+	void zero() {
+		byte[] zeros = new byte[1 << 16];
+		for (ByteBuffer chunk : chunks) {
+			for (int at = 0; at < chunk.capacity(); at += zeros.length)
+				chunk.put(at, zeros, 0, Math.min(zeros.length, chunk.capacity() - at));
+		}
+	}
+
+	@Override
+	public boolean isOffHeap() { return true; }
+}
@@ -0,0 +1,247 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft split over a fork/join pool
+ *
+ * The root moves, and optionally the replies to them, become tasks
+ * that each count their subtree on their own copy of the position.
+ * Below the split every worker thread counts with its own Perft,
+ * so the move buffers are never shared. An optional hash table of
+ * subtree counts is shared by all threads.
+ *
+ * Usage:
+ *	java engine.ParallelPerft [-threads n] [-hash mb] [-split plies] [fen] [depth]
+ *
+ * @author Siwen Wang
+ */
+public class ParallelPerft {
+
+	/**
+	 * The pool the tasks run in
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The shared subtree counts, or null
+	 */
+	private final PerftTable table;
+
+	/**
+	 * The number of plies split into tasks, 1 or 2
+	 */
+	private final int split;
+
+	/**
+	 * The counter of each worker thread
+	 */
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(this::newWorker);
+
+	/**
+	 * Every worker created, for the report
+	 */
+	private final Queue<Worker> allWorkers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The counter and statistics of one thread
+	 */
+	private static final class Worker {
+
+		/**
+		 * The thread's counter
+		 */
+		final Perft perft;
+
+		/**
+		 * The thread's name
+		 */
+		final String name;
+
+		/**
+		 * Leaf nodes counted by the thread in the current run
+		 */
+		long nodes;
+
+		/**
+		 * Time the thread spent counting in the current run, in nanoseconds
+		 */
+		long busy;
+
+		/**
+		 * Create a worker
+		 *
+		 * @param perft	The thread's counter
+		 * @param name	The thread's name
+		 */
+		Worker(Perft perft, String name) {
+			this.perft = perft;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A subtree to count
+	 */
+	private final class Task extends RecursiveTask<Long> {
+
+		/**
+		 * Serial ID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The position at the top of the subtree, owned by this task
+		 */
+		private final Position pos;
+
+		/**
+		 * The depth of the subtree
+		 */
+		private final int depth;
+
+		/**
+		 * The number of plies still to split into tasks
+		 */
+		private final int split;
+
+		/**
+		 * Create a task
+		 *
+		 * @param pos	The position, owned by this task
+		 * @param depth	The depth of the subtree
+		 * @param split	The number of plies still to split
+		 */
+		Task(Position pos, int depth, int split) {
+			this.pos = pos;
+			this.depth = depth;
+			this.split = split;
+		}
+
+		@Override
+		protected Long compute() {
+			if (split == 0 || depth <= 1) {
+				Worker worker = workers.get();
+				long start = System.nanoTime();
+				long nodes = worker.perft.perft(pos, depth);
+				worker.busy += System.nanoTime() - start;
+				worker.nodes += nodes;
+				return nodes;
+			}
+			int[] moves = new int[MoveGen.MAX_MOVES];
+			int n = MoveGen.generate(pos, moves);
+			List<Task> tasks = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				Position child = pos.copy();
+				child.make(moves[i]);
+				tasks.add(new Task(child, depth - 1, split - 1));
+			}
+			long nodes = 0;
+			for (Task task : invokeAll(tasks))
+				nodes += task.join();
+			return nodes;
+		}
+	}
+
+	/**
+	 * Create a parallel perft counter
+	 *
+	 * @param threads	The number of worker threads
+	 * @param hashMb	The size of the shared hash table, 0 for none
+	 * @param split		The number of plies to split into tasks, 1 or 2
+	 */
+	public ParallelPerft(int threads, int hashMb, int split) {
+		pool = new ForkJoinPool(threads);
+		table = hashMb > 0 ? new PerftTable(hashMb) : null;
+		this.split = Math.max(1, Math.min(2, split));
+	}
+
+	/**
+	 * Make the counter of the calling worker thread
+	 *
+	 * @return	The worker
+	 */
+	private Worker newWorker() {
+		Worker worker = new Worker(new Perft(table), Thread.currentThread().getName());
+		allWorkers.add(worker);
+		return worker;
+	}
+
+	/**
+	 * Count the leaf nodes below a position
+	 *
+	 * @param pos	The position, not changed
+	 * @param depth	The depth in plies
+	 * @return		The number of leaf nodes
+	 */
+	public long perft(Position pos, int depth) {
+		for (Worker worker : allWorkers) {
+			worker.nodes = 0;
+			worker.busy = 0;
+		}
+		return pool.invoke(new Task(pos.copy(), depth, split));
+	}
+
+	/**
+	 * Print the nodes and node rate of each thread in the last run
+	 */
+	public void reportThreads() {
+		for (Worker worker : allWorkers) {
+			if (worker.nodes > 0)
+				System.out.printf("  %s: %d nodes, %d nps%n", worker.name, worker.nodes,
+						Perft.nodesPerSecond(worker.nodes, worker.busy));
+		}
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	public void shutdown() { pool.shutdown(); }
+
+	/**
+	 * Run parallel perft from the command line
+	 *
+	 * @param args	Options, then nothing for the suite, or [fen] depth
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hashMb = 0;
+		int split = 1;
+		List<String> rest = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-hash": hashMb = Integer.parseInt(args[++i]); break;
+			case "-split": split = Integer.parseInt(args[++i]); break;
+			default: rest.add(args[i]);
+			}
+		}
+
+		ParallelPerft perft = new ParallelPerft(threads, hashMb, split);
+		System.out.println(threads + " threads, split " + perft.split + " plies, "
+				+ (hashMb > 0 ? hashMb + " MB hash" : "no hash"));
+		boolean ok = true;
+		if (rest.isEmpty()) {
+			ok = Perft.runSuite((pos, depth) -> {
+				long nodes = perft.perft(pos, depth);
+				perft.reportThreads();
+				return nodes;
+			});
+		} else {
+			int depth = Integer.parseInt(rest.get(rest.size() - 1));
+			String fen = rest.size() == 1 ? Perft.START
+					: String.join(" ", rest.subList(0, rest.size() - 1));
+			long start = System.nanoTime();
+			long nodes = perft.perft(Position.fromFen(fen), depth);
+			Perft.report(depth, nodes, System.nanoTime() - start);
+			perft.reportThreads();
+		}
+		perft.shutdown();
+		System.exit(ok ? 0 : 1);
+	}
+}
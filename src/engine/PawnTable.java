@@ -0,0 +1,97 @@
+package engine;
+
+/**
+ * Cache of pawn structure scores, indexed by the pawn hash
+ *
+ * Pawns move rarely compared to the pieces, so most positions a
+ * search evaluates share their pawns with one evaluated before, and
+ * the structure terms are looked up instead of computed again.
+ *
+ * Each search thread has its own table, so there are no races. A
+ * slot that was never written has key 0 and score 0, which is the
+ * right answer for a board without pawns, so it needs no check.
+ *
+ * @author Siwen Wang
+ */
+final class PawnTable {
+
+	/**
+	 * The default number of entries, 192 KB
+	 */
+	static final int DEFAULT_ENTRIES = 1 << 14;
+
+	/**
+	 * The pawn hash of each entry
+	 */
+	private final long[] keys;
+
+	/**
+	 * The packed structure score of each entry, see Evaluation.score
+	 */
+	private final int[] scores;
+
+	/**
+	 * Number of entries minus one
+	 */
+	private final int mask;
+
+	/**
+	 * Probes that found their pawns, and ones that didn't
+	 */
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create a table
+	 *
+	 * @param entries	The number of entries, a power of two
+	 */
+	PawnTable(int entries) {
+		keys = new long[entries];
+		scores = new int[entries];
+		mask = entries - 1;
+	}
+
+	/**
+	 * Get the pawn structure score of a position, computing and
+	 * storing it if its pawns aren't in the table
+	 *
+	 * @param pos	The position
+	 * @return		The packed score for white
+	 */
+	int probe(Position pos) {
+		long key = pos.pawnHash();
+		int i = (int) key & mask;
+		if (keys[i] == key) {
+			hits++;
+			return scores[i];
+		}
+		misses++;
+		int score = Evaluation.pawnStructure(pos);
+		keys[i] = key;
+		scores[i] = score;
+		return score;
+	}
+
+	/**
+	 * Get the number of probes that found their pawns
+	 *
+	 * @return	The number of hits
+	 */
+	long hits() { return hits; }
+
+	/**
+	 * Get the number of probes that didn't find their pawns
+	 *
+	 * @return	The number of misses
+	 */
+	long misses() { return misses; }
+
+	/**
+	 * Reset the hit and miss counters
+	 */
+	void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+}
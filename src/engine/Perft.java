@@ -0,0 +1,234 @@
+package engine;
+
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Perft, the number of leaf nodes of the move tree to a fixed depth
+ *
+ * Counting every line of play and comparing against published
+ * numbers catches rule bugs in the move generator and in make and
+ * unmake; timing the count measures their speed.
+ *
+ * Usage:
+ *	java engine.Perft							run the reference suite
+ *	java engine.Perft depth [divide]			from the start position
+ *	java engine.Perft "fen" depth [divide]		from any position
+ *
+ * @author Siwen Wang
+ */
+public class Perft {
+
+	/**
+	 * The deepest perft a Perft instance has buffers for
+	 */
+	public static final int MAX_DEPTH = 16;
+
+	/**
+	 * The initial position
+	 */
+	public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	/**
+	 * The standard reference positions
+	 */
+	public static final String[] SUITE = {
+		START,
+		// "Kiwipete", castling, pins and en passant
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		// Discovered checks and en passant out of check
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		// Promotions and castling through check
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+	};
+
+	/**
+	 * The known node counts of the reference positions, from depth 1
+	 */
+	public static final long[][] SUITE_COUNTS = {
+		{ 20, 400, 8902, 197281, 4865609 },
+		{ 48, 2039, 97862, 4085603 },
+		{ 14, 191, 2812, 43238, 674624, 11030083 },
+		{ 6, 264, 9467, 422333, 15833292 },
+		{ 44, 1486, 62379, 2103487 },
+		{ 46, 2079, 89890, 3894594 },
+	};
+
+	/**
+	 * A move buffer for each ply, so counting allocates nothing
+	 */
+	private final int[][] moves = new int[MAX_DEPTH][MoveGen.MAX_MOVES];
+
+	/**
+	 * Subtree counts to reuse, or null
+	 */
+	private final PerftTable table;
+
+	/**
+	 * Create a perft counter without a hash table
+	 */
+	public Perft() { this(null); }
+
+	/**
+	 * Create a perft counter
+	 *
+	 * @param table	The subtree counts to reuse, may be shared between threads
+	 */
+	Perft(PerftTable table) { this.table = table; }
+
+	/**
+	 * Count the leaf nodes below a position
+	 *
+	 * @param pos	The position, unchanged on return
+	 * @param depth	The depth in plies
+	 * @return		The number of leaf nodes
+	 */
+	public long perft(Position pos, int depth) {
+		if (depth == 0) return 1;
+		return count(pos, depth, 0);
+	}
+
+	/**
+	 * Count the leaf nodes below each root move and print them
+	 *
+	 * @param pos	The position, unchanged on return
+	 * @param depth	The depth in plies, at least 1
+	 * @return		The total number of leaf nodes
+	 */
+	public long divide(Position pos, int depth) {
+		int[] buffer = moves[0];
+		int n = MoveGen.generate(pos, buffer);
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			pos.make(buffer[i]);
+			long nodes = depth > 1 ? count(pos, depth - 1, 1) : 1;
+			pos.unmake();
+			System.out.println(Moves.toString(buffer[i]) + ": " + nodes);
+			total += nodes;
+		}
+		return total;
+	}
+
+	/**
+	 * Count recursively. The last ply is only generated, not
+	 * made, since the legal generator's count is the leaf count.
+	 *
+	 * @param pos	The position
+	 * @param depth	The remaining depth, at least 1
+	 * @param ply	The distance from the root, for the buffer
+	 * @return		The number of leaf nodes
+	 */
+	private long count(Position pos, int depth, int ply) {
+		if (table != null && depth > 1) {
+			long nodes = table.probe(pos.hash(), depth);
+			if (nodes >= 0) return nodes;
+		}
+		int[] buffer = moves[ply];
+		int n = MoveGen.generate(pos, buffer);
+		if (depth == 1) return n;
+		long nodes = 0;
+		for (int i = 0; i < n; i++) {
+			pos.make(buffer[i]);
+			nodes += count(pos, depth - 1, ply + 1);
+			pos.unmake();
+		}
+		if (table != null) table.store(pos.hash(), depth, nodes);
+		return nodes;
+	}
+
+	/**
+	 * Run perft from the command line
+	 *
+	 * @param args	Nothing for the suite, else [fen] depth [divide]
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.exit(runSuite() ? 0 : 1);
+			return;
+		}
+		boolean divide = args[args.length - 1].equalsIgnoreCase("divide");
+		int last = divide ? args.length - 2 : args.length - 1;
+		if (last < 0) {
+			System.err.println("Usage: java engine.Perft [fen] depth [divide]");
+			System.exit(2);
+		}
+		int depth = Integer.parseInt(args[last]);
+		// The FEN may have been passed unquoted, as several arguments
+		String fen = last == 0 ? START : String.join(" ", java.util.Arrays.copyOf(args, last));
+		if (depth < 1 || depth > MAX_DEPTH) {
+			System.err.println("Depth must be between 1 and " + MAX_DEPTH);
+			System.exit(2);
+		}
+
+		Perft perft = new Perft();
+		Position pos = Position.fromFen(fen);
+		long start = System.nanoTime();
+		long nodes = divide ? perft.divide(pos, depth) : perft.perft(pos, depth);
+		long elapsed = System.nanoTime() - start;
+		report(depth, nodes, elapsed);
+	}
+
+	/**
+	 * Run every reference position to its deepest known count
+	 *
+	 * @return	True if every count matched
+	 */
+	public static boolean runSuite() {
+		Perft perft = new Perft();
+		return runSuite(perft::perft);
+	}
+
+	/**
+	 * Run every reference position to its deepest known count
+	 *
+	 * @param counter	Counts the leaf nodes of a position to a depth
+	 * @return			True if every count matched
+	 */
+	static boolean runSuite(ToLongBiFunction<Position, Integer> counter) {
+		boolean ok = true;
+		long totalNodes = 0;
+		long totalTime = 0;
+		for (int i = 0; i < SUITE.length; i++) {
+			Position pos = Position.fromFen(SUITE[i]);
+			int depth = SUITE_COUNTS[i].length;
+			long expected = SUITE_COUNTS[i][depth - 1];
+			long start = System.nanoTime();
+			long nodes = counter.applyAsLong(pos, depth);
+			long elapsed = System.nanoTime() - start;
+			totalNodes += nodes;
+			totalTime += elapsed;
+			System.out.println(SUITE[i]);
+			report(depth, nodes, elapsed);
+			if (nodes != expected) {
+				System.out.println("FAILED, expected " + expected);
+				ok = false;
+			}
+		}
+		System.out.println("Total " + totalNodes + " nodes, " + nodesPerSecond(totalNodes, totalTime) + " nps");
+		return ok;
+	}
+
+	/**
+	 * Print the result of one perft run
+	 *
+	 * @param depth		The depth
+	 * @param nodes		The number of leaf nodes
+	 * @param elapsed	The time taken in nanoseconds
+	 */
+	static void report(int depth, long nodes, long elapsed) {
+		System.out.printf("depth %d: %d nodes in %.3f s, %d nps%n",
+				depth, nodes, elapsed / 1e9, nodesPerSecond(nodes, elapsed));
+	}
+
+	/**
+	 * Get a rate in nodes per second
+	 *
+	 * @param nodes		The number of nodes
+	 * @param elapsed	The time taken in nanoseconds
+	 * @return			The rate
+	 */
+	static long nodesPerSecond(long nodes, long elapsed) {
+		return elapsed == 0 ? 0 : nodes * 1_000_000_000L / elapsed;
+	}
+}
@@ -0,0 +1,75 @@
+package engine;
+
+/**
+ * Shared hash table of perft subtree counts
+ *
+ * Each entry is two longs, the packed data and the hash XOR the
+ * data. Threads read and write without locks; an entry torn by
+ * two racing writers fails the XOR check and reads as a miss.
+ *
+ * @author Siwen Wang
+ */
+final class PerftTable {
+
+	/**
+	 * Entries as pairs of (hash ^ data, data), data is count << 8 | depth
+	 */
+	private final long[] entries;
+
+	/**
+	 * Number of entries minus one
+	 */
+	private final int mask;
+
+	/**
+	 * Create a table
+	 *
+	 * @param megabytes	The size, rounded down to a power of two entries
+	 */
+	PerftTable(int megabytes) {
+		long count = Long.highestOneBit(Math.max(1, ((long) megabytes << 20) / 16));
+		count = Math.min(count, 1 << 28);
+		entries = new long[(int) count * 2];
+		mask = (int) count - 1;
+	}
+
+	/**
+	 * Look up the count of a subtree
+	 *
+	 * @param hash	The hash of the position
+	 * @param depth	The depth of the subtree
+	 * @return		The number of leaf nodes, or -1 if it's not stored
+	 */
+	long probe(long hash, int depth) {
+		int i = index(hash, depth);
+		long data = entries[i + 1];
+		if ((entries[i] ^ data) != hash || (data & 0xFF) != depth) return -1;
+		return data >>> 8;
+	}
+
+	/**
+	 * Store the count of a subtree, replacing whatever was there
+	 *
+	 * @param hash	The hash of the position
+	 * @param depth	The depth of the subtree
+	 * @param nodes	The number of leaf nodes
+	 */
+	void store(long hash, int depth, long nodes) {
+		int i = index(hash, depth);
+		long data = nodes << 8 | depth;
+		entries[i] = hash ^ data;
+		entries[i + 1] = data;
+	}
+
+	/**
+	 * Get the array index of an entry. The depth is mixed in so
+	 * the same position at different depths uses different slots.
+	 *
+	 * @param hash	The hash of the position
+	 * @param depth	The depth of the subtree
+	 * @return		The index of the entry's first long
+	 */
+	private int index(long hash, int depth) {
+		return ((int) (hash ^ hash >>> 32) + depth * 0x9E3779B9 & mask) << 1;
+	}
+}
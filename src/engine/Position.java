@@ -0,0 +1,828 @@
+package engine;
+
+import enums.ChessColor;
+import pieces.Bishop;
+import pieces.King;
+import pieces.Knight;
+import pieces.Pawn;
+import pieces.Piece;
+import pieces.Queen;
+import pieces.Rook;
+
+/**
+ * Bitboard representation of a chess position
+ *
+ * Squares are numbered row * 8 + column, so square 0 is a1
+ * and square 63 is h8, matching the [row][column] layout of
+ * the model's board.
+ *
+ * @author Siwen Wang
+ */
+public class Position {
+
+	/**
+	 * Color index of white
+	 */
+	public static final int WHITE = 0;
+
+	/**
+	 * Color index of black
+	 */
+	public static final int BLACK = 1;
+
+	/**
+	 * Piece type indices
+	 */
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+
+	/**
+	 * Marks an empty square in the mailbox
+	 */
+	public static final int EMPTY = -1;
+
+	/**
+	 * Castling right flags
+	 */
+	public static final int WHITE_OO = 1;
+	public static final int WHITE_OOO = 2;
+	public static final int BLACK_OO = 4;
+	public static final int BLACK_OOO = 8;
+
+	/**
+	 * Deepest line make can play before unmake
+	 */
+	public static final int MAX_PLY = 1024;
+
+	/**
+	 * Castling rights kept when a piece leaves or lands on each square
+	 */
+	private static final int[] CASTLE_MASK = new int[64];
+
+	/**
+	 * Piece values for exchanges, the king worth more than anything
+	 * it could win
+	 */
+	private static final int[] SEE_VALUES = {100, 320, 330, 500, 900, 20000};
+
+	static {
+		java.util.Arrays.fill(CASTLE_MASK, 15);
+		CASTLE_MASK[4] &= ~(WHITE_OO | WHITE_OOO);
+		CASTLE_MASK[7] &= ~WHITE_OO;
+		CASTLE_MASK[0] &= ~WHITE_OOO;
+		CASTLE_MASK[60] &= ~(BLACK_OO | BLACK_OOO);
+		CASTLE_MASK[63] &= ~BLACK_OO;
+		CASTLE_MASK[56] &= ~BLACK_OOO;
+	}
+
+	/**
+	 * One set per piece, indexed by color * 6 + type
+	 */
+	private final long[] pieces = new long[12];
+
+	/**
+	 * Occupancy of each color
+	 */
+	private final long[] occupied = new long[2];
+
+	/**
+	 * Piece code on each square, or EMPTY
+	 */
+	private final byte[] squares = new byte[64];
+
+	/**
+	 * The color to move
+	 */
+	private int side = WHITE;
+
+	/**
+	 * Castling right flags
+	 */
+	private int castling;
+
+	/**
+	 * The square a pawn can capture en passant onto, or -1
+	 */
+	private int epSquare = -1;
+
+	/**
+	 * Zobrist hash of the position, see Zobrist
+	 */
+	private long hash = Zobrist.CASTLING[0];
+
+	/**
+	 * Zobrist hash of the pawns alone, for the pawn structure cache
+	 */
+	private long pawnHash;
+
+	/**
+	 * Middlegame and endgame score for white and the game phase,
+	 * see Evaluation, kept up to date by put and remove
+	 */
+	private int mgScore;
+	private int egScore;
+	private int phase;
+
+	/**
+	 * Attack set of the piece on each square, 0 when empty.
+	 * Only valid for squares outside dirty.
+	 */
+	private final long[] attacksFrom = new long[64];
+
+	/**
+	 * Union of the attack sets of each color
+	 */
+	private final long[] attackMaps = new long[2];
+
+	/**
+	 * Squares changed since the attack maps were last refreshed
+	 */
+	private long dirty;
+
+	/**
+	 * Undo stack, one entry per move made: the move, the piece it
+	 * captured, and the castling rights and en passant square before it
+	 */
+	private final int[] moveStack = new int[MAX_PLY];
+	private final byte[] capturedStack = new byte[MAX_PLY];
+	private final byte[] castlingStack = new byte[MAX_PLY];
+	private final byte[] epStack = new byte[MAX_PLY];
+
+	/**
+	 * Hash before each move made
+	 */
+	private final long[] hashStack = new long[MAX_PLY];
+
+	/**
+	 * Checkers of the side to move after each move made
+	 */
+	private final long[] checkersStack = new long[MAX_PLY + 1];
+
+	/**
+	 * Number of moves on the undo stack
+	 */
+	private int ply;
+
+	/**
+	 * Scratch space for the gains of an exchange
+	 */
+	private final int[] seeGain = new int[32];
+
+	/**
+	 * Constructor, creates an empty position
+	 */
+	public Position() {
+		java.util.Arrays.fill(squares, (byte) EMPTY);
+	}
+
+	/**
+	 * Copy this position, without its undo stack, so a search
+	 * can make and unmake moves on it freely
+	 *
+	 * @return	The copy
+	 */
+	public Position copy() {
+		Position p = new Position();
+		System.arraycopy(pieces, 0, p.pieces, 0, pieces.length);
+		System.arraycopy(occupied, 0, p.occupied, 0, occupied.length);
+		System.arraycopy(squares, 0, p.squares, 0, squares.length);
+		System.arraycopy(attacksFrom, 0, p.attacksFrom, 0, attacksFrom.length);
+		System.arraycopy(attackMaps, 0, p.attackMaps, 0, attackMaps.length);
+		p.dirty = dirty;
+		p.side = side;
+		p.castling = castling;
+		p.epSquare = epSquare;
+		p.hash = hash;
+		p.pawnHash = pawnHash;
+		p.mgScore = mgScore;
+		p.egScore = egScore;
+		p.phase = phase;
+		return p;
+	}
+
+	/**
+	 * Build a position from the model's board
+	 *
+	 * @param board		The board, [row][column]
+	 * @param enPassant	The pawn that can be captured en passant, or null
+	 * @param toMove	The color to move
+	 * @return			The position
+	 */
+	public static Position fromBoard(Piece[][] board, Pawn enPassant, ChessColor toMove) {
+		Position pos = new Position();
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				if (board[row][col] != null)
+					pos.put(square(row, col), code(board[row][col]));
+			}
+		}
+		pos.setSideToMove(toMove == ChessColor.BLACK ? BLACK : WHITE);
+		pos.setCastlingRights(castlingRights(board));
+		pos.setEnPassant(enPassant);
+		return pos;
+	}
+
+	/**
+	 * Build a position from Forsyth-Edwards Notation. The move
+	 * counters at the end are optional and ignored.
+	 *
+	 * @param fen	The FEN string
+	 * @return		The position
+	 */
+	public static Position fromFen(String fen) {
+		String[] fields = fen.trim().split("\\s+");
+		if (fields.length < 4)
+			throw new IllegalArgumentException("Invalid FEN: " + fen);
+		Position pos = new Position();
+		int row = 7;
+		int col = 0;
+		for (char c : fields[0].toCharArray()) {
+			if (c == '/') {
+				row--;
+				col = 0;
+			} else if (Character.isDigit(c)) {
+				col += c - '0';
+			} else {
+				int type = "pnbrqk".indexOf(Character.toLowerCase(c));
+				if (type < 0 || row < 0 || col > 7)
+					throw new IllegalArgumentException("Invalid FEN: " + fen);
+				pos.put(square(row, col++), code(Character.isUpperCase(c) ? WHITE : BLACK, type));
+			}
+		}
+		pos.setSideToMove(fields[1].equals("b") ? BLACK : WHITE);
+		int rights = 0;
+		if (fields[2].indexOf('K') >= 0) rights |= WHITE_OO;
+		if (fields[2].indexOf('Q') >= 0) rights |= WHITE_OOO;
+		if (fields[2].indexOf('k') >= 0) rights |= BLACK_OO;
+		if (fields[2].indexOf('q') >= 0) rights |= BLACK_OOO;
+		pos.setCastlingRights(rights);
+		if (!fields[3].equals("-"))
+			pos.setEpSquare(square(fields[3].charAt(1) - '1', fields[3].charAt(0) - 'a'));
+		return pos;
+	}
+
+	/**
+	 * Derive the castling rights from the first move flags of
+	 * the kings and rooks on their home squares
+	 *
+	 * @param board		The board, [row][column]
+	 * @return			The castling right flags
+	 */
+	public static int castlingRights(Piece[][] board) {
+		int rights = 0;
+		if (unmoved(board[0][4], King.class, ChessColor.WHITE)) {
+			if (unmoved(board[0][7], Rook.class, ChessColor.WHITE)) rights |= WHITE_OO;
+			if (unmoved(board[0][0], Rook.class, ChessColor.WHITE)) rights |= WHITE_OOO;
+		}
+		if (unmoved(board[7][4], King.class, ChessColor.BLACK)) {
+			if (unmoved(board[7][7], Rook.class, ChessColor.BLACK)) rights |= BLACK_OO;
+			if (unmoved(board[7][0], Rook.class, ChessColor.BLACK)) rights |= BLACK_OOO;
+		}
+		return rights;
+	}
+
+	/**
+	 * Helper for castlingRights
+	 *
+	 * @param p		The piece on the home square
+	 * @param type	The type it should be
+	 * @param color	The color it should be
+	 * @return		true if it's that type and color and never moved
+	 */
+	private static boolean unmoved(Piece p, Class<? extends Piece> type, ChessColor color) {
+		return type.isInstance(p) && p.getColor() == color && p.checkIfFirstMove();
+	}
+
+	/**
+	 * Get the square index of a location
+	 *
+	 * @param row	The row
+	 * @param col	The column
+	 * @return		The square index
+	 */
+	public static int square(int row, int col) { return row * 8 + col; }
+
+	/**
+	 * Get the piece code of a piece object
+	 *
+	 * @param p		The piece
+	 * @return		color * 6 + type
+	 */
+	public static int code(Piece p) {
+		int type;
+		if (p instanceof Pawn) type = PAWN;
+		else if (p instanceof Knight) type = KNIGHT;
+		else if (p instanceof Bishop) type = BISHOP;
+		else if (p instanceof Rook) type = ROOK;
+		else if (p instanceof Queen) type = QUEEN;
+		else type = KING;
+		return code(p.isWhite() ? WHITE : BLACK, type);
+	}
+
+	/**
+	 * Get the piece code of a color and type
+	 *
+	 * @param color	The color
+	 * @param type	The type
+	 * @return		color * 6 + type
+	 */
+	public static int code(int color, int type) { return color * 6 + type; }
+
+	/**
+	 * Get the color of a piece code
+	 *
+	 * @param code	The piece code
+	 * @return		The color
+	 */
+	public static int colorOf(int code) { return code / 6; }
+
+	/**
+	 * Get the type of a piece code
+	 *
+	 * @param code	The piece code
+	 * @return		The type
+	 */
+	public static int typeOf(int code) { return code % 6; }
+
+	/**
+	 * Put a piece on a square, replacing whatever was there
+	 *
+	 * @param sq	The square
+	 * @param code	The piece code
+	 */
+	public void put(int sq, int code) {
+		if (squares[sq] != EMPTY) remove(sq);
+		long bit = 1L << sq;
+		pieces[code] |= bit;
+		occupied[colorOf(code)] |= bit;
+		squares[sq] = (byte) code;
+		hash ^= Zobrist.PIECE[code][sq];
+		if (typeOf(code) == PAWN) pawnHash ^= Zobrist.PIECE[code][sq];
+		mgScore += Evaluation.MG[code][sq];
+		egScore += Evaluation.EG[code][sq];
+		phase += Evaluation.PHASE[typeOf(code)];
+		dirty |= bit;
+	}
+
+	/**
+	 * Remove the piece on a square
+	 *
+	 * @param sq	The square
+	 * @return		The piece code that was there, or EMPTY
+	 */
+	public int remove(int sq) {
+		int code = squares[sq];
+		if (code == EMPTY) return EMPTY;
+		long bit = 1L << sq;
+		pieces[code] &= ~bit;
+		occupied[colorOf(code)] &= ~bit;
+		squares[sq] = EMPTY;
+		hash ^= Zobrist.PIECE[code][sq];
+		if (typeOf(code) == PAWN) pawnHash ^= Zobrist.PIECE[code][sq];
+		mgScore -= Evaluation.MG[code][sq];
+		egScore -= Evaluation.EG[code][sq];
+		phase -= Evaluation.PHASE[typeOf(code)];
+		dirty |= bit;
+		return code;
+	}
+
+	/**
+	 * Move a piece, capturing whatever is on the destination
+	 *
+	 * @param from	The origin square
+	 * @param to	The destination square
+	 * @return		The captured piece code, or EMPTY
+	 */
+	public int move(int from, int to) {
+		int captured = remove(to);
+		put(to, remove(from));
+		return captured;
+	}
+
+	/**
+	 * Get the piece code on a square
+	 *
+	 * @param sq	The square
+	 * @return		The piece code, or EMPTY
+	 */
+	public int pieceOn(int sq) { return squares[sq]; }
+
+	/**
+	 * Get the piece code at a location
+	 *
+	 * @param row	The row
+	 * @param col	The column
+	 * @return		The piece code, or EMPTY
+	 */
+	public int getPiece(int row, int col) { return squares[square(row, col)]; }
+
+	/**
+	 * Get the set of one piece kind
+	 *
+	 * @param color	The color
+	 * @param type	The type
+	 * @return		The set of squares
+	 */
+	public long pieces(int color, int type) { return pieces[code(color, type)]; }
+
+	/**
+	 * Get the occupancy of one color
+	 *
+	 * @param color	The color
+	 * @return		The set of squares
+	 */
+	public long occupancy(int color) { return occupied[color]; }
+
+	/**
+	 * Get the occupancy of both colors
+	 *
+	 * @return		The set of squares
+	 */
+	public long occupancy() { return occupied[WHITE] | occupied[BLACK]; }
+
+	/**
+	 * Get the king square of a color
+	 *
+	 * @param color	The color
+	 * @return		The square, or 64 if the king is gone
+	 */
+	public int king(int color) { return Long.numberOfTrailingZeros(pieces[code(color, KING)]); }
+
+	/**
+	 * Get the pieces of one color that attack a square
+	 *
+	 * @param sq		The square
+	 * @param color		The attacking color
+	 * @return			The set of attackers
+	 */
+	public long attackersTo(int sq, int color) { return attackersTo(sq, color, occupancy()); }
+
+	/**
+	 * Get the pieces of one color that attack a square, with
+	 * sliders seeing through a different occupancy
+	 *
+	 * @param sq		The square
+	 * @param color		The attacking color
+	 * @param occ		The occupancy the sliders see
+	 * @return			The set of attackers
+	 */
+	public long attackersTo(int sq, int color, long occ) {
+		long queens = pieces[code(color, QUEEN)];
+		return (Attacks.pawn(color ^ 1, sq) & pieces[code(color, PAWN)])
+				| (Attacks.knight(sq) & pieces[code(color, KNIGHT)])
+				| (Attacks.king(sq) & pieces[code(color, KING)])
+				| (Attacks.bishop(sq, occ) & (pieces[code(color, BISHOP)] | queens))
+				| (Attacks.rook(sq, occ) & (pieces[code(color, ROOK)] | queens));
+	}
+
+	/**
+	 * Get the pieces checking the king of the side to move
+	 *
+	 * @return			The set of checkers
+	 */
+	public long checkers() {
+		if (ply > 0) return checkersStack[ply];
+		long king = pieces[code(side, KING)];
+		return king == 0 ? 0 : attackersTo(Long.numberOfTrailingZeros(king), side ^ 1);
+	}
+
+	/**
+	 * Check whether the side to move is in check
+	 *
+	 * @return			true if the king is attacked
+	 */
+	public boolean inCheck() { return checkers() != 0; }
+
+	/**
+	 * Make a move for the engine. The board objects and observers
+	 * of the model are not involved; unmake takes the move back.
+	 *
+	 * @param move		A legal packed move, see Moves
+	 */
+	public void make(int move) {
+		int from = Moves.from(move);
+		int to = Moves.to(move);
+		int kind = Moves.kind(move);
+		int us = side;
+		int piece = squares[from];
+
+		moveStack[ply] = move;
+		hashStack[ply] = hash;
+		castlingStack[ply] = (byte) castling;
+		epStack[ply] = (byte) epSquare;
+
+		int captured;
+		if (kind == Moves.EN_PASSANT) {
+			captured = remove(to + (us == WHITE ? -8 : 8));
+			move(from, to);
+		} else captured = move(from, to);
+		capturedStack[ply] = (byte) captured;
+
+		if (kind == Moves.PROMOTION) {
+			put(to, code(us, Moves.promotionType(move)));
+		} else if (kind == Moves.CASTLE) {
+			if (to > from) move(from + 3, from + 1);
+			else move(from - 4, from - 1);
+		}
+
+		setCastlingRights(castling & CASTLE_MASK[from] & CASTLE_MASK[to]);
+		if (typeOf(piece) == PAWN && Math.abs(to - from) == 16) setEpSquare((from + to) / 2);
+		else setEpSquare(-1);
+		setSideToMove(us ^ 1);
+		ply++;
+		long king = pieces[code(side, KING)];
+		checkersStack[ply] = king == 0 ? 0
+				: attackersTo(Long.numberOfTrailingZeros(king), us);
+	}
+
+	/**
+	 * Pass the turn, for null-move pruning; unmake takes it back.
+	 * The side to move must not be in check.
+	 */
+	public void makeNull() {
+		moveStack[ply] = Moves.NONE;
+		hashStack[ply] = hash;
+		castlingStack[ply] = (byte) castling;
+		epStack[ply] = (byte) epSquare;
+		capturedStack[ply] = EMPTY;
+		setEpSquare(-1);
+		setSideToMove(side ^ 1);
+		ply++;
+		checkersStack[ply] = 0;
+	}
+
+	/**
+	 * Check whether the last move made passed the turn
+	 *
+	 * @return			true if it was made by makeNull
+	 */
+	public boolean lastMoveWasNull() { return ply > 0 && moveStack[ply - 1] == Moves.NONE; }
+
+	/**
+	 * Take back the last move made
+	 */
+	public void unmake() {
+		ply--;
+		int move = moveStack[ply];
+		if (move == Moves.NONE) {
+			side ^= 1;
+			epSquare = epStack[ply];
+			hash = hashStack[ply];
+			return;
+		}
+		int from = Moves.from(move);
+		int to = Moves.to(move);
+		int kind = Moves.kind(move);
+		side ^= 1;
+		int us = side;
+
+		if (kind == Moves.PROMOTION) put(to, code(us, PAWN));
+		move(to, from);
+		int captured = capturedStack[ply];
+		if (captured != EMPTY) {
+			if (kind == Moves.EN_PASSANT) put(to + (us == WHITE ? -8 : 8), captured);
+			else put(to, captured);
+		}
+		if (kind == Moves.CASTLE) {
+			if (to > from) move(from + 1, from + 3);
+			else move(from - 1, from - 4);
+		}
+
+		castling = castlingStack[ply];
+		epSquare = epStack[ply];
+		hash = hashStack[ply];
+	}
+
+	/**
+	 * Check whether the position after the moves made repeats
+	 * one reached earlier on the undo stack, since the last null move
+	 *
+	 * @return			true if the same hash appeared with the same side to move
+	 */
+	public boolean isRepetition() {
+		for (int i = ply - 1; i >= 0; i--) {
+			if (moveStack[i] == Moves.NONE) return false;
+			if (((ply - i) & 1) == 0 && hashStack[i] == hash) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the number of moves on the undo stack
+	 *
+	 * @return			The ply
+	 */
+	public int ply() { return ply; }
+
+	/**
+	 * Get every square one color attacks
+	 *
+	 * @param color		The attacking color
+	 * @return			The attack map
+	 */
+	public long attackMap(int color) {
+		if (dirty != 0) refreshAttacks();
+		return attackMaps[color];
+	}
+
+	/**
+	 * Static exchange evaluation: the material a capture wins once
+	 * every piece attacking the square has recaptured, each side
+	 * always using its least valuable attacker and free to stop
+	 * when going on would lose more. Sliders behind the pieces that
+	 * leave the square join in (x-rays). Pins are not considered.
+	 *
+	 * @param move		A legal packed move
+	 * @return			The material won, negative if the capture loses
+	 */
+	public int see(int move) {
+		int from = Moves.from(move);
+		int to = Moves.to(move);
+		int kind = Moves.kind(move);
+		long occ = occupancy() ^ (1L << from);
+		int[] gain = seeGain;
+		gain[0] = squares[to] == EMPTY ? 0 : SEE_VALUES[typeOf(squares[to])];
+		// The piece standing on the square, to be captured next
+		int onSquare = SEE_VALUES[typeOf(squares[from])];
+		if (kind == Moves.EN_PASSANT) {
+			gain[0] = SEE_VALUES[PAWN];
+			occ ^= 1L << (to + (side == WHITE ? -8 : 8));
+		} else if (kind == Moves.PROMOTION) {
+			onSquare = SEE_VALUES[Moves.promotionType(move)];
+			gain[0] += onSquare - SEE_VALUES[PAWN];
+		}
+
+		long diagonal = pieces[code(WHITE, BISHOP)] | pieces[code(BLACK, BISHOP)]
+				| pieces[code(WHITE, QUEEN)] | pieces[code(BLACK, QUEEN)];
+		long straight = pieces[code(WHITE, ROOK)] | pieces[code(BLACK, ROOK)]
+				| pieces[code(WHITE, QUEEN)] | pieces[code(BLACK, QUEEN)];
+		long attackers = (attackersTo(to, WHITE, occ) | attackersTo(to, BLACK, occ)) & occ;
+		int color = side ^ 1;
+		int d = 0;
+		while (d < gain.length - 1) {
+			long ours = attackers & occupied[color];
+			if (ours == 0) break;
+			int type = PAWN;
+			long attacker = 0;
+			for (; type <= KING; type++) {
+				attacker = ours & pieces[code(color, type)];
+				if (attacker != 0) break;
+			}
+			// The king can't recapture into a defended square
+			if (type == KING && (attackers & occupied[color ^ 1]) != 0) break;
+			d++;
+			gain[d] = onSquare - gain[d - 1];
+			onSquare = SEE_VALUES[type];
+			occ ^= attacker & -attacker;
+			attackers |= (Attacks.bishop(to, occ) & diagonal) | (Attacks.rook(to, occ) & straight);
+			attackers &= occ;
+			color ^= 1;
+		}
+		// Each side stops the exchange where it's best for it
+		while (d > 0) {
+			gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+			d--;
+		}
+		return gain[0];
+	}
+
+	/**
+	 * Check whether a square is attacked
+	 *
+	 * @param sq		The square
+	 * @param color		The attacking color
+	 * @return			true if any piece of that color attacks it
+	 */
+	public boolean isAttacked(int sq, int color) {
+		return (attackMap(color) & (1L << sq)) != 0;
+	}
+
+	/**
+	 * Bring the attack maps up to date. Only the changed squares
+	 * and the sliders whose rays reach one of them are recomputed.
+	 */
+	private void refreshAttacks() {
+		long occ = occupancy();
+		long rooks = pieces[code(WHITE, ROOK)] | pieces[code(BLACK, ROOK)]
+				| pieces[code(WHITE, QUEEN)] | pieces[code(BLACK, QUEEN)];
+		long bishops = pieces[code(WHITE, BISHOP)] | pieces[code(BLACK, BISHOP)]
+				| pieces[code(WHITE, QUEEN)] | pieces[code(BLACK, QUEEN)];
+		long update = dirty;
+		for (long b = dirty; b != 0; b &= b - 1) {
+			int sq = Long.numberOfTrailingZeros(b);
+			update |= (Attacks.rook(sq, occ) & rooks) | (Attacks.bishop(sq, occ) & bishops);
+		}
+		for (; update != 0; update &= update - 1) {
+			int sq = Long.numberOfTrailingZeros(update);
+			attacksFrom[sq] = squares[sq] == EMPTY ? 0 : Attacks.of(squares[sq], sq, occ);
+		}
+		for (int color = WHITE; color <= BLACK; color++) {
+			long map = 0;
+			for (long b = occupied[color]; b != 0; b &= b - 1)
+				map |= attacksFrom[Long.numberOfTrailingZeros(b)];
+			attackMaps[color] = map;
+		}
+		dirty = 0;
+	}
+
+	/**
+	 * Getter for the Zobrist hash
+	 *
+	 * @return	The hash of this position
+	 */
+	public long hash() { return hash; }
+
+	/**
+	 * Get the Zobrist hash of the pawns alone, the same for every
+	 * position with the same pawns on the same squares
+	 *
+	 * @return	The pawn hash
+	 */
+	public long pawnHash() { return pawnHash; }
+
+	/**
+	 * Get the middlegame material and piece-square score
+	 *
+	 * @return	The score for white
+	 */
+	public int mgScore() { return mgScore; }
+
+	/**
+	 * Get the endgame material and piece-square score
+	 *
+	 * @return	The score for white
+	 */
+	public int egScore() { return egScore; }
+
+	/**
+	 * Get the game phase, the non-pawn material on the board
+	 *
+	 * @return	The phase, Evaluation.TOTAL_PHASE at the start
+	 */
+	public int phase() { return phase; }
+
+	/**
+	 * Getter for the side to move
+	 *
+	 * @return	WHITE or BLACK
+	 */
+	public int sideToMove() { return side; }
+
+	/**
+	 * Setter for the side to move
+	 *
+	 * @param color	WHITE or BLACK
+	 */
+	public void setSideToMove(int color) {
+		if (color != side) hash ^= Zobrist.SIDE;
+		side = color;
+	}
+
+	/**
+	 * Getter for the castling rights
+	 *
+	 * @return	The castling right flags
+	 */
+	public int castlingRights() { return castling; }
+
+	/**
+	 * Setter for the castling rights
+	 *
+	 * @param rights	The castling right flags
+	 */
+	public void setCastlingRights(int rights) {
+		hash ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights];
+		castling = rights;
+	}
+
+	/**
+	 * Getter for the en passant square
+	 *
+	 * @return	The square a pawn can capture onto, or -1
+	 */
+	public int epSquare() { return epSquare; }
+
+	/**
+	 * Setter for the en passant square
+	 *
+	 * @param sq	The square a pawn can capture onto, or -1
+	 */
+	public void setEpSquare(int sq) {
+		hash ^= Zobrist.enPassant(epSquare) ^ Zobrist.enPassant(sq);
+		epSquare = sq;
+	}
+
+	/**
+	 * Set the en passant square from the pawn that just moved two rows
+	 *
+	 * @param p		The pawn, or null
+	 */
+	public void setEnPassant(Pawn p) {
+		if (p == null) setEpSquare(-1);
+		else setEpSquare(square(p.isWhite() ? p.getRow() - 1 : p.getRow() + 1, p.getCol()));
+	}
+}
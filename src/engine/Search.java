@@ -0,0 +1,860 @@
+package engine;
+
+import static engine.Position.KING;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Negamax alpha-beta search with iterative deepening
+ *
+ * The search makes and unmakes moves on its own copy of the
+ * position, one depth after another. It stops when it reaches its
+ * depth, runs out of its node budget or passes its deadline, and
+ * plays the best move of the last depth it finished.
+ *
+ * With more than one thread the search is Lazy SMP: helper threads
+ * search the same root at staggered depths and in rotated move
+ * orders, and only share the transposition table. Their results
+ * reach the main thread through the table; the main thread's move
+ * is the one played.
+ *
+ * A search may ponder: run on the opponent's time on the position
+ * after the reply it expects, ignoring its deadline. If the reply
+ * comes, ponderhit starts its clock and it goes on; if not, stop
+ * ends it.
+ *
+ * @author Siwen Wang
+ */
+public class Search implements MoveChooser {
+
+	/**
+	 * Bigger than any score
+	 */
+	public static final int INFINITE = 32000;
+
+	/**
+	 * Score of being checkmated now, less the plies to the mate
+	 */
+	public static final int MATE = 31000;
+
+	/**
+	 * The deepest the search can go
+	 */
+	public static final int MAX_DEPTH = 64;
+
+	/**
+	 * Scores beyond this are mates
+	 */
+	private static final int MATE_BOUND = MATE - 2 * MAX_DEPTH;
+
+	/**
+	 * The default depth and node budget of a move
+	 */
+	public static final int DEFAULT_DEPTH = 4;
+	public static final long DEFAULT_NODES = 2_000_000;
+
+	/**
+	 * Margin for positional gains a capture may bring, in delta pruning
+	 */
+	private static final int DELTA_MARGIN = 200;
+
+	/**
+	 * History score at which all history scores are halved
+	 */
+	private static final int HISTORY_MAX = 1 << 20;
+
+	/**
+	 * Plies a late quiet move is reduced by, by remaining depth and
+	 * number of moves searched before it, growing with the log of each
+	 */
+	private static final int[][] REDUCTIONS = new int[MAX_DEPTH + 1][MoveGen.MAX_MOVES];
+
+	static {
+		for (int d = 1; d <= MAX_DEPTH; d++)
+			for (int m = 1; m < MoveGen.MAX_MOVES; m++)
+				REDUCTIONS[d][m] = (int) (0.5 + Math.log(d) * Math.log(m) / 2);
+	}
+
+	/**
+	 * The default size of the transposition table in megabytes
+	 */
+	public static final int DEFAULT_HASH_MB = 16;
+
+	/**
+	 * The depth to search to
+	 */
+	private int depth;
+
+	/**
+	 * The number of nodes a move may take
+	 */
+	private long nodeLimit;
+
+	/**
+	 * Whether to prune with null moves, reduce late moves, and
+	 * extend checks
+	 */
+	private boolean nullMove = true;
+	private boolean reductions = true;
+	private boolean checkExtensions = true;
+
+	/**
+	 * The moves of the root
+	 */
+	private final int[] rootMoves = new int[MoveGen.MAX_MOVES];
+
+	/**
+	 * A move picker for each ply
+	 */
+	private final MovePicker[] pickers = newPickers();
+
+	/**
+	 * Two killer moves for each ply, quiet moves that caused a cutoff
+	 */
+	private final int[][] killers = new int[MAX_DEPTH + 1][2];
+
+	/**
+	 * How often each quiet move caused a cutoff, by side, origin and destination
+	 */
+	private final int[][][] history = new int[2][64][64];
+
+	/**
+	 * The pawn structure cache, one per thread
+	 */
+	private final PawnTable pawns = new PawnTable(PawnTable.DEFAULT_ENTRIES);
+
+	/**
+	 * Beta cutoffs, and the ones caused by the first move searched
+	 */
+	private long cutoffs;
+	private long firstMoveCutoffs;
+
+	/**
+	 * The position being searched
+	 */
+	private Position pos;
+
+	/**
+	 * The nodes visited by the current search
+	 */
+	private long nodes;
+
+	/**
+	 * The System.nanoTime the search must stop by, if timed; moved
+	 * by ponderhit from another thread
+	 */
+	private volatile long deadline;
+
+	/**
+	 * Whether the search has a deadline
+	 */
+	private volatile boolean timed;
+
+	/**
+	 * The time the current move may take in nanoseconds, read by
+	 * ponderhit from another thread
+	 */
+	private volatile long timeLimit;
+
+	/**
+	 * Whether the search runs on the opponent's time, ignoring its
+	 * deadline until ponderhit or stop
+	 */
+	private volatile boolean pondering;
+
+	/**
+	 * Whether ponder already set the next search up, so chooseMove
+	 * mustn't clear a stop that came before it started
+	 */
+	private volatile boolean prepared;
+
+	/**
+	 * Whether the node budget or the time ran out
+	 */
+	private boolean stopped;
+
+	/**
+	 * The deepest depth finished by the last search
+	 */
+	private int completedDepth;
+
+	/**
+	 * The score of the last move chosen
+	 */
+	private int score;
+
+	/**
+	 * The transposition table, shared with the helpers
+	 */
+	private TranspositionTable tt;
+
+	/**
+	 * Set to stop the helpers, shared with them
+	 */
+	private final AtomicBoolean abort;
+
+	/**
+	 * 0 for the main thread, the helper number for helpers
+	 */
+	private final int id;
+
+	/**
+	 * Endgame tablebases that score positions with few pieces, or
+	 * null; shared with the helpers
+	 */
+	private Tablebase tablebase;
+
+	/**
+	 * The helper searches, one per extra thread
+	 */
+	private Search[] helpers = new Search[0];
+
+	/**
+	 * The threads running the helpers, null with one thread
+	 */
+	private ExecutorService pool;
+
+	/**
+	 * The nodes visited by all threads in the last search
+	 */
+	private long totalNodes;
+
+	/**
+	 * Constructor with the default depth and node budget
+	 */
+	public Search() { this(DEFAULT_DEPTH, DEFAULT_NODES); }
+
+	/**
+	 * Constructor
+	 *
+	 * @param depth		The depth to search to
+	 * @param nodeLimit	The number of nodes a move may take
+	 */
+	public Search(int depth, long nodeLimit) {
+		setDepth(depth);
+		this.nodeLimit = nodeLimit;
+		tt = TranspositionTable.create(DEFAULT_HASH_MB);
+		abort = new AtomicBoolean();
+		id = 0;
+	}
+
+	/**
+	 * Constructor for a helper
+	 *
+	 * @param main	The main search, whose table and abort flag are shared
+	 * @param id	The helper number, from 1
+	 */
+	private Search(Search main, int id) {
+		tt = main.tt;
+		abort = main.abort;
+		this.id = id;
+	}
+
+	/**
+	 * Set the number of threads searching each move
+	 *
+	 * @param threads	The number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads == helpers.length + 1) return;
+		shutdown();
+		helpers = new Search[threads - 1];
+		for (int i = 0; i < helpers.length; i++)
+			helpers[i] = new Search(this, i + 1);
+		if (helpers.length > 0) {
+			pool = Executors.newFixedThreadPool(helpers.length, r -> {
+				Thread t = new Thread(r, "search-helper");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Replace the transposition table with one of another size.
+	 * The table keeps its kind, on or off the heap.
+	 *
+	 * @param megabytes	The size in megabytes
+	 */
+	public void setHashSize(int megabytes) {
+		if (TranspositionTable.bytesFor(megabytes, tt.isOffHeap()) != tt.bytes())
+			tt = TranspositionTable.create(megabytes, tt.isOffHeap());
+	}
+
+	/**
+	 * Forget everything searched, for a new game
+	 */
+	public void clearHash() { tt.clear(); }
+
+	/**
+	 * Get the transposition table, for its size and counters
+	 *
+	 * @return	The table
+	 */
+	public TranspositionTable table() { return tt; }
+
+	/**
+	 * Get the number of threads searching each move
+	 *
+	 * @return	The number of threads
+	 */
+	public int threads() { return helpers.length + 1; }
+
+	/**
+	 * Stop the helper threads
+	 */
+	public void shutdown() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+		helpers = new Search[0];
+	}
+
+	/**
+	 * Set the endgame tablebases, which take over positions they
+	 * have: the root plays their move, and other nodes take their
+	 * score instead of being searched
+	 *
+	 * @param tablebase	The tablebases, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) { this.tablebase = tablebase; }
+
+	/**
+	 * Setter for depth
+	 *
+	 * @param depth	The depth to search to, 1 to MAX_DEPTH
+	 */
+	public void setDepth(int depth) { this.depth = Math.max(1, Math.min(MAX_DEPTH, depth)); }
+
+	/**
+	 * Turn null-move pruning on or off: a side that can pass and
+	 * still reach beta at a reduced depth is cut off
+	 *
+	 * @param on	true to prune
+	 */
+	public void setNullMove(boolean on) { nullMove = on; }
+
+	/**
+	 * Turn late-move reductions on or off: quiet moves ordered late
+	 * are searched shallower, and again at full depth if they beat alpha
+	 *
+	 * @param on	true to reduce
+	 */
+	public void setReductions(boolean on) { reductions = on; }
+
+	/**
+	 * Turn check extensions on or off: a move that gives check is
+	 * searched a ply deeper
+	 *
+	 * @param on	true to extend
+	 */
+	public void setCheckExtensions(boolean on) { checkExtensions = on; }
+
+	/**
+	 * Setter for the node budget
+	 *
+	 * @param nodeLimit	The number of nodes a move may take
+	 */
+	public void setNodeLimit(long nodeLimit) { this.nodeLimit = nodeLimit; }
+
+	/**
+	 * Get the nodes visited by the last search, by all threads
+	 *
+	 * @return	The number of nodes
+	 */
+	public long nodes() { return totalNodes; }
+
+	/**
+	 * Get how often the first move searched caused the beta cutoff,
+	 * out of all cutoffs of the last search. Good ordering keeps it
+	 * above 0.9.
+	 *
+	 * @return	The rate, 0 to 1
+	 */
+	public double firstMoveCutoffRate() {
+		long all = cutoffs;
+		long first = firstMoveCutoffs;
+		for (Search helper : helpers) {
+			all += helper.cutoffs;
+			first += helper.firstMoveCutoffs;
+		}
+		return all == 0 ? 0 : (double) first / all;
+	}
+
+	/**
+	 * Get how often the pawn structure of an evaluated position was
+	 * in the pawn table, in the last search
+	 *
+	 * @return	The rate, 0 to 1
+	 */
+	public double pawnHitRate() {
+		long hits = pawns.hits();
+		long all = hits + pawns.misses();
+		for (Search helper : helpers) {
+			hits += helper.pawns.hits();
+			all += helper.pawns.hits() + helper.pawns.misses();
+		}
+		return all == 0 ? 0 : (double) hits / all;
+	}
+
+	/**
+	 * Get the deepest depth finished by the last search
+	 *
+	 * @return	The depth
+	 */
+	public int completedDepth() { return completedDepth; }
+
+	/**
+	 * Get the score of the last move chosen
+	 *
+	 * @return	The score in centipawns for the side that moved
+	 */
+	public int score() { return score; }
+
+	/**
+	 * Choose the best move found within the depth and node budget,
+	 * without a time limit
+	 *
+	 * @param root	The position, not changed
+	 * @return		The packed move, or Moves.NONE if there's no legal move
+	 */
+	public int chooseMove(Position root) { return chooseMove(root, 0); }
+
+	/**
+	 * Choose the best move by searching one depth deeper each
+	 * iteration until a limit is hit. An unfinished iteration is
+	 * thrown away, so the move is always from a finished depth.
+	 *
+	 * @param root		The position, not changed
+	 * @param timeLimit	The time the move may take in nanoseconds, 0 for no limit
+	 * @return			The packed move, or Moves.NONE if there's no legal move
+	 */
+	@Override
+	public int chooseMove(Position root, long timeLimit) {
+		// A pondering search was set up by the thread that stops it
+		if (prepared) prepared = false;
+		else prepare(timeLimit);
+		completedDepth = 0;
+		totalNodes = 0;
+		int us = root.sideToMove();
+		if (root.pieces(us, KING) == 0) return Moves.NONE;
+
+		// The GUI lets a king be left in check, take it if we can
+		long kingBit = root.pieces(us ^ 1, KING);
+		if (kingBit != 0) {
+			int ksq = Long.numberOfTrailingZeros(kingBit);
+			long attackers = root.attackersTo(ksq, us);
+			if (attackers != 0) {
+				score = MATE;
+				return Moves.make(Long.numberOfTrailingZeros(attackers), ksq, Moves.NORMAL);
+			}
+		}
+
+		// A tablebase knows the best move and its score
+		int tableMove = tablebase == null ? Moves.NONE : tablebase.bestMove(root);
+		if (tableMove != Moves.NONE) {
+			score = tablebaseScore(root, 0);
+			return tableMove;
+		}
+
+		tt.newSearch();
+		List<Future<?>> running = new ArrayList<>();
+		for (Search helper : helpers) {
+			helper.tt = tt;
+			helper.tablebase = tablebase;
+			helper.depth = depth;
+			helper.nodeLimit = nodeLimit;
+			helper.nullMove = nullMove;
+			helper.reductions = reductions;
+			helper.checkExtensions = checkExtensions;
+			// Helpers go on until the main thread is done
+			running.add(pool.submit(() -> helper.iterate(root)));
+		}
+		int best = iterate(root);
+		abort.set(true);
+		totalNodes = nodes;
+		for (int i = 0; i < running.size(); i++) {
+			try {
+				running.get(i).get();
+				totalNodes += helpers[i].nodes;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Make the next search ponder: think on the opponent's time, past
+	 * its deadline, until ponderhit or stop. Call it on the thread
+	 * that later calls those, before the search is started, so a
+	 * stop can't be lost to the search starting late.
+	 *
+	 * @param timeLimit	The time the move may take after ponderhit in
+	 * 					nanoseconds, 0 for no limit; the next chooseMove's
+	 * 					own limit is ignored
+	 */
+	public void ponder(long timeLimit) {
+		prepare(timeLimit);
+		pondering = true;
+		prepared = true;
+	}
+
+	/**
+	 * Reset the abort flag and start the clock of the next search
+	 *
+	 * @param timeLimit	The time the move may take in nanoseconds, 0 for no limit
+	 */
+	private void prepare(long timeLimit) {
+		this.timeLimit = timeLimit;
+		timed = timeLimit > 0;
+		deadline = System.nanoTime() + timeLimit;
+		abort.set(false);
+	}
+
+	/**
+	 * The opponent played the move pondered on: start the clock of
+	 * the pondering search now, keeping all it has searched
+	 */
+	public void ponderhit() {
+		deadline = System.nanoTime() + timeLimit;
+		pondering = false;
+	}
+
+	/**
+	 * Stop the running search, which returns the best move of its
+	 * last finished depth. A search set up by ponder that hasn't
+	 * started yet stops as soon as it does.
+	 */
+	public void stop() {
+		pondering = false;
+		abort.set(true);
+	}
+
+	/**
+	 * Get the reply the last search expects to a position, from the
+	 * transposition table, to ponder on
+	 *
+	 * @param pos	The position after the move chosen, not changed
+	 * @return		The packed legal move, or Moves.NONE if the table has none
+	 */
+	public int expectedReply(Position pos) {
+		long entry = tt.probe(pos.hash());
+		if (entry == 0) return Moves.NONE;
+		int reply = TranspositionTable.move(entry);
+		int[] moves = new int[MoveGen.MAX_MOVES];
+		int n = MoveGen.generate(pos, moves);
+		for (int i = 0; i < n; i++) {
+			if (moves[i] == reply) return reply;
+		}
+		return Moves.NONE;
+	}
+
+	/**
+	 * Deepen the search of a root until a limit is hit
+	 *
+	 * @param root	The position, only copied
+	 * @return		The best move of the last finished depth
+	 */
+	private int iterate(Position root) {
+		pos = root.copy();
+		nodes = 0;
+		stopped = false;
+		completedDepth = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		pawns.resetCounters();
+		// Killers are about positions of this search, history fades
+		for (int[] slots : killers)
+			java.util.Arrays.fill(slots, Moves.NONE);
+		for (int[][] side : history)
+			for (int[] from : side)
+				for (int to = 0; to < 64; to++)
+					from[to] /= 4;
+		int n = MoveGen.generate(pos, rootMoves);
+		if (n == 0) return Moves.NONE;
+		// Helpers start on other moves and depths, to fill the table with other subtrees
+		if (id > 0) {
+			int shift = id % n;
+			int[] rotated = java.util.Arrays.copyOf(rootMoves, n);
+			for (int i = 0; i < n; i++)
+				rootMoves[i] = rotated[(i + shift) % n];
+		}
+		int best = rootMoves[0];
+		score = 0;
+		for (int d = 1 + (id & 1); d <= depth; d++) {
+			int alpha = -INFINITE;
+			int iterationBest = Moves.NONE;
+			for (int i = 0; i < n; i++) {
+				pos.make(rootMoves[i]);
+				int value = -negamax(d - 1, 1, -INFINITE, -alpha);
+				pos.unmake();
+				if (stopped) break;
+				if (value > alpha) {
+					alpha = value;
+					iterationBest = rootMoves[i];
+				}
+			}
+			if (stopped) break;
+			best = iterationBest;
+			score = alpha;
+			completedDepth = d;
+			tt.store(pos.hash(), best, toTT(score, 0), d, TranspositionTable.EXACT);
+			// Search the best move first next time
+			int index = 0;
+			while (rootMoves[index] != best) index++;
+			System.arraycopy(rootMoves, 0, rootMoves, 1, index);
+			rootMoves[0] = best;
+			// A forced mate won't change, and the next depth would take longer than what's left
+			if (Math.abs(score) >= MATE_BOUND) break;
+			if (timed && !pondering && deadline - System.nanoTime() < timeLimit / 2) break;
+			// Stopped, or the main thread is done: don't start another depth
+			if (abort.get()) break;
+		}
+		return best;
+	}
+
+	/**
+	 * Search a position
+	 *
+	 * @param depth	The remaining depth
+	 * @param ply	The distance from the root
+	 * @param alpha	The score we already have
+	 * @param beta	The score the opponent already has
+	 * @return		The score for the side to move
+	 */
+	private int negamax(int depth, int ply, int alpha, int beta) {
+		if (tablebase != null && Tablebase.fits(pos)) {
+			int value = tablebaseScore(pos, ply);
+			if (value != INFINITE) return value;
+		}
+		if (depth == 0) return quiesce(ply, alpha, beta);
+		if (outOfBudget()) return 0;
+		if (pos.isRepetition()) return 0;
+		if (ply == MAX_DEPTH) return Evaluation.evaluate(pos, pawns);
+
+		long hash = pos.hash();
+		long entry = tt.probe(hash);
+		int hashMove = Moves.NONE;
+		if (entry != 0) {
+			hashMove = TranspositionTable.move(entry);
+			if (TranspositionTable.depth(entry) >= depth) {
+				int value = fromTT(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && value >= beta)
+						|| (bound == TranspositionTable.UPPER && value <= alpha))
+					return value;
+			}
+		}
+
+		int us = pos.sideToMove();
+		boolean inCheck = pos.inCheck();
+		// Passing is usually worse than the best move, so if it still reaches beta
+		// so will a move. Not with only pawns left, where passing may be the best
+		if (nullMove && depth >= 3 && !inCheck && !pos.lastMoveWasNull() && beta < MATE_BOUND
+				&& (pos.occupancy(us) & ~pos.pieces(us, Position.PAWN) & ~pos.pieces(us, KING)) != 0
+				&& Evaluation.evaluate(pos, pawns) >= beta) {
+			int r = depth >= 7 ? 3 : 2;
+			pos.makeNull();
+			int value = -negamax(Math.max(0, depth - 1 - r), ply + 1, -beta, -beta + 1);
+			pos.unmake();
+			if (stopped) return 0;
+			if (value >= beta) return beta;
+		}
+
+		MovePicker picker = pickers[ply];
+		picker.init(pos, hashMove, killers[ply][0], killers[ply][1], history, false);
+		int bestMove = hashMove;
+		int bound = TranspositionTable.UPPER;
+		int searched = 0;
+		for (int move = picker.next(); move != Moves.NONE; move = picker.next()) {
+			boolean quiet = MovePicker.isQuiet(pos, move);
+			pos.make(move);
+			boolean givesCheck = pos.inCheck();
+			int newDepth = depth - 1 + (checkExtensions && givesCheck ? 1 : 0);
+			int value;
+			if (reductions && depth >= 3 && searched >= 3 && quiet && !inCheck && !givesCheck
+					&& move != killers[ply][0] && move != killers[ply][1]) {
+				// Late quiet moves rarely matter; less so if they cut off at this depth before,
+				// more so if they never did
+				int r = REDUCTIONS[depth][searched];
+				int historyScore = history[us][Moves.from(move)][Moves.to(move)];
+				if (historyScore >= depth * depth) r--;
+				else if (historyScore == 0) r++;
+				r = Math.max(0, Math.min(r, newDepth - 1));
+				value = -negamax(newDepth - r, ply + 1, -alpha - 1, -alpha);
+				// A null window fail high is only a bound: confirm it at full depth, then
+				// get the exact score if it's inside the window
+				if (value > alpha && r > 0) value = -negamax(newDepth, ply + 1, -alpha - 1, -alpha);
+				if (value > alpha && value < beta) value = -negamax(newDepth, ply + 1, -beta, -alpha);
+			} else value = -negamax(newDepth, ply + 1, -beta, -alpha);
+			pos.unmake();
+			if (stopped) return 0;
+			searched++;
+			if (value > alpha) {
+				alpha = value;
+				bestMove = move;
+				bound = TranspositionTable.EXACT;
+				if (alpha >= beta) {
+					bound = TranspositionTable.LOWER;
+					cutoff(move, quiet, depth, ply, searched);
+					break;
+				}
+			}
+		}
+		if (searched == 0) return inCheck ? -MATE + ply : 0;
+		tt.store(hash, bestMove, toTT(alpha, ply), depth, bound);
+		return alpha;
+	}
+
+	/**
+	 * Score a position from the tablebases: mates by their
+	 * distance, as the search scores them, and draws as 0
+	 *
+	 * @param position	The position
+	 * @param ply		The distance from the root
+	 * @return			The score for the side to move, INFINITE if no table has it
+	 */
+	private int tablebaseScore(Position position, int ply) {
+		int wdl = tablebase.wdl(position);
+		if (wdl == Tablebase.UNKNOWN) return INFINITE;
+		if (wdl == Tablebase.DRAW) return 0;
+		int plies = tablebase.distance(position);
+		return wdl == Tablebase.WIN ? MATE - ply - plies : -MATE + ply + plies;
+	}
+
+	/**
+	 * Search only captures and promotions until the position is
+	 * quiet, so a leaf is never scored in the middle of an exchange.
+	 * The side to move may stand pat on the static score instead of
+	 * capturing, and captures that can't lift the score near alpha
+	 * even if they win their piece for free are skipped (delta
+	 * pruning). In check every evasion is searched.
+	 *
+	 * @param ply	The distance from the root
+	 * @param alpha	The score we already have
+	 * @param beta	The score the opponent already has
+	 * @return		The score for the side to move
+	 */
+	private int quiesce(int ply, int alpha, int beta) {
+		if (outOfBudget()) return 0;
+		boolean inCheck = pos.inCheck();
+		int standPat = -INFINITE;
+		if (!inCheck || ply == MAX_DEPTH) {
+			standPat = Evaluation.evaluate(pos, pawns);
+			if (standPat >= beta || ply == MAX_DEPTH) return standPat;
+			if (standPat > alpha) alpha = standPat;
+		}
+
+		MovePicker picker = pickers[ply];
+		picker.init(pos, Moves.NONE, Moves.NONE, Moves.NONE, history, !inCheck);
+		int searched = 0;
+		for (int move = picker.next(); move != Moves.NONE; move = picker.next()) {
+			searched++;
+			if (!inCheck && Moves.kind(move) != Moves.PROMOTION) {
+				int captured = Moves.kind(move) == Moves.EN_PASSANT ? Position.PAWN
+						: Position.typeOf(pos.pieceOn(Moves.to(move)));
+				if (standPat + Evaluation.VALUES[captured] + DELTA_MARGIN <= alpha) continue;
+			}
+			pos.make(move);
+			int value = -quiesce(ply + 1, -beta, -alpha);
+			pos.unmake();
+			if (stopped) return 0;
+			if (value > alpha) {
+				alpha = value;
+				if (alpha >= beta) break;
+			}
+		}
+		if (inCheck && searched == 0) return -MATE + ply;
+		return alpha;
+	}
+
+	/**
+	 * Remember a move that caused a beta cutoff. A quiet one becomes
+	 * a killer of its ply and gains history, so sibling positions
+	 * try it early.
+	 *
+	 * @param move		The move
+	 * @param quiet		Whether it's not a capture or promotion
+	 * @param depth		The remaining depth it was searched at
+	 * @param ply		The distance from the root
+	 * @param searched	The number of moves searched, this one included
+	 */
+	private void cutoff(int move, boolean quiet, int depth, int ply, int searched) {
+		cutoffs++;
+		if (searched == 1) firstMoveCutoffs++;
+		if (!quiet) return;
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		int[] scores = history[pos.sideToMove()][Moves.from(move)];
+		scores[Moves.to(move)] += depth * depth;
+		// Keep the scores in range by halving all of them now and then
+		if (scores[Moves.to(move)] > HISTORY_MAX) {
+			for (int[][] side : history)
+				for (int[] from : side)
+					for (int to = 0; to < 64; to++)
+						from[to] /= 2;
+		}
+	}
+
+	/**
+	 * Count a node and check whether the search must stop
+	 *
+	 * @return	true if the node budget, the time or the helpers' run is over
+	 */
+	private boolean outOfBudget() {
+		if (++nodes >= nodeLimit || ((nodes & 1023) == 0
+				&& (abort.get() || (timed && !pondering && System.nanoTime() - deadline > 0))))
+			stopped = true;
+		return stopped;
+	}
+
+	/**
+	 * Make the move pickers, one for each ply
+	 *
+	 * @return	The pickers
+	 */
+	private static MovePicker[] newPickers() {
+		MovePicker[] pickers = new MovePicker[MAX_DEPTH + 1];
+		for (int i = 0; i < pickers.length; i++)
+			pickers[i] = new MovePicker();
+		return pickers;
+	}
+
+	/**
+	 * Make a mate score relative to the position, for the table
+	 *
+	 * @param score	The score relative to the root
+	 * @param ply	The distance from the root
+	 * @return		The score to store
+	 */
+	private static int toTT(int score, int ply) {
+		if (score >= MATE_BOUND) return score + ply;
+		if (score <= -MATE_BOUND) return score - ply;
+		return score;
+	}
+
+	/**
+	 * Make a stored mate score relative to the root again
+	 *
+	 * @param score	The stored score
+	 * @param ply	The distance from the root
+	 * @return		The score relative to the root
+	 */
+	private static int fromTT(int score, int ply) {
+		if (score >= MATE_BOUND) return score - ply;
+		if (score <= -MATE_BOUND) return score + ply;
+		return score;
+	}
+}
@@ -0,0 +1,289 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Endgame tablebases of up to four pieces, made by
+ * TablebaseGenerator, memory mapped for probing
+ *
+ * Each material has two files, named after it, like KRvK.dtm and
+ * KRvK.wdl, holding the value of every position index (see
+ * TablebaseIndex) for the side to move:
+ *	.dtm	one byte: 0 for a draw, n > 0 for a mate in n plies,
+ *			-n-1 for being mated in n plies
+ *	.wdl	two bits: 0 draw, 1 win, 2 loss, four to a byte
+ * after a 16 byte header: MAGIC, the kind, the number of indexes
+ * and 0. The values assume no castling rights and no en passant,
+ * so positions with castling rights or an en passant capture
+ * aren't probed, and they ignore the fifty move rule.
+ *
+ * Probing allocates nothing and is safe from any thread.
+ *
+ * @author Siwen Wang
+ */
+public final class Tablebase {
+
+	/**
+	 * Results of wdl for the side to move
+	 */
+	public static final int LOSS = -1;
+	public static final int DRAW = 0;
+	public static final int WIN = 1;
+	public static final int UNKNOWN = 2;
+
+	/**
+	 * Set this system property to a directory of tablebase files
+	 */
+	public static final String DIRECTORY_PROPERTY = "chess.tablebases";
+
+	/**
+	 * The first int of every file
+	 */
+	static final int MAGIC = 0x43544231;
+
+	/**
+	 * File kinds and extensions
+	 */
+	static final int DTM = 0;
+	static final int WDL = 1;
+	static final String[] EXTENSIONS = {".dtm", ".wdl"};
+
+	/**
+	 * Bytes before the values
+	 */
+	static final int HEADER = 16;
+
+	/**
+	 * A mapped material
+	 */
+	private static final class Table {
+
+		/**
+		 * The material's indexing
+		 */
+		final TablebaseIndex index;
+
+		/**
+		 * The mapped files, with their headers
+		 */
+		final ByteBuffer dtm;
+		final ByteBuffer wdl;
+
+		/**
+		 * Create a table
+		 *
+		 * @param index	The material's indexing
+		 * @param dtm	The mapped .dtm file
+		 * @param wdl	The mapped .wdl file
+		 */
+		Table(TablebaseIndex index, ByteBuffer dtm, ByteBuffer wdl) {
+			this.index = index;
+			this.dtm = dtm;
+			this.wdl = wdl;
+		}
+	}
+
+	/**
+	 * The mapped materials
+	 */
+	private final Table[] tables;
+
+	/**
+	 * Map every material with both files in a directory
+	 *
+	 * @param dir			The directory
+	 * @throws IOException	If a file can't be read or isn't a tablebase
+	 */
+	public Tablebase(Path dir) throws IOException {
+		List<Table> found = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSIONS[DTM])) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				name = name.substring(0, name.length() - EXTENSIONS[DTM].length());
+				Path wdl = dir.resolve(name + EXTENSIONS[WDL]);
+				if (!Files.exists(wdl)) continue;
+				TablebaseIndex index = new TablebaseIndex(name);
+				found.add(new Table(index, map(file, DTM, index), map(wdl, WDL, index)));
+			}
+		}
+		tables = found.toArray(new Table[0]);
+	}
+
+	/**
+	 * Open the tablebases of a directory, reporting a failure
+	 * instead of throwing
+	 *
+	 * @param dir	The directory, or null
+	 * @return		The tablebases, or null if there's no directory or it can't be read
+	 */
+	public static Tablebase open(String dir) {
+		if (dir == null) return null;
+		try {
+			return new Tablebase(Paths.get(dir));
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Can't open the tablebases in " + dir + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Map a file and check its header
+	 *
+	 * @param file			The file
+	 * @param kind			DTM or WDL
+	 * @param index			The indexing of its material
+	 * @return				The mapped file
+	 * @throws IOException	If it can't be read or isn't the expected table
+	 */
+	private static ByteBuffer map(Path file, int kind, TablebaseIndex index) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.capacity() != HEADER + bytes(kind, index.size) || buffer.getInt(0) != MAGIC
+					|| buffer.getInt(4) != kind || buffer.getInt(8) != index.size)
+				throw new IOException("Not a " + index.name + " tablebase: " + file);
+			return buffer;
+		}
+	}
+
+	/**
+	 * Get the size of the values of a file
+	 *
+	 * @param kind	DTM or WDL
+	 * @param size	The number of indexes
+	 * @return		The size in bytes
+	 */
+	static int bytes(int kind, int size) { return kind == DTM ? size : (size + 3) / 4; }
+
+	/**
+	 * Get the number of materials mapped
+	 *
+	 * @return	The number of tables
+	 */
+	public int tables() { return tables.length; }
+
+	/**
+	 * Check whether a position has few enough pieces to look up
+	 *
+	 * @param pos	The position
+	 * @return		true if it may be in a table
+	 */
+	public static boolean fits(Position pos) {
+		return Long.bitCount(pos.occupancy()) <= TablebaseIndex.MAX_PIECES;
+	}
+
+	/**
+	 * Look up whether the side to move wins, draws or loses
+	 *
+	 * @param pos	The position
+	 * @return		WIN, DRAW, LOSS, or UNKNOWN if no table has it
+	 */
+	public int wdl(Position pos) {
+		Table table = find(pos, false);
+		boolean flip = table == null;
+		if (flip) table = find(pos, true);
+		if (table == null) return UNKNOWN;
+		int i = table.index.index(pos, flip);
+		int bits = (table.wdl.get(HEADER + (i >>> 2)) >>> ((i & 3) * 2)) & 3;
+		return bits == 1 ? WIN : bits == 2 ? LOSS : DRAW;
+	}
+
+	/**
+	 * Look up the distance to mate
+	 *
+	 * @param pos	The position
+	 * @return		The plies to mate, won or lost, 0 if checkmated;
+	 * 				-1 for a draw or if no table has it
+	 */
+	public int distance(Position pos) {
+		Table table = find(pos, false);
+		boolean flip = table == null;
+		if (flip) table = find(pos, true);
+		if (table == null) return -1;
+		return plies(table.dtm.get(HEADER + table.index.index(pos, flip)));
+	}
+
+	/**
+	 * Pick the move that keeps the result of a position: the
+	 * quickest win, a draw, or the slowest loss
+	 *
+	 * @param pos	The position, not changed
+	 * @return		The packed move, or Moves.NONE if no table has it
+	 */
+	public int bestMove(Position pos) {
+		int wdl = wdl(pos);
+		if (wdl == UNKNOWN) return Moves.NONE;
+		Position child = pos.copy();
+		int[] moves = new int[MoveGen.MAX_MOVES];
+		int n = MoveGen.generate(child, moves);
+		int best = Moves.NONE;
+		int bestRank = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			child.make(moves[i]);
+			int result = wdl(child);
+			int rank = result == UNKNOWN ? Integer.MIN_VALUE
+					: result == LOSS ? 1000 - distance(child)
+					: result == DRAW ? 0 : -1000 + distance(child);
+			child.unmake();
+			if (rank > bestRank) {
+				bestRank = rank;
+				best = moves[i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Find the table of a position's material
+	 *
+	 * @param pos	The position
+	 * @param flip	Whether to look for it with the colors swapped
+	 * @return		The table, or null
+	 */
+	private Table find(Position pos, boolean flip) {
+		if (!fits(pos) || pos.castlingRights() != 0) return null;
+		int ep = pos.epSquare();
+		int us = pos.sideToMove();
+		if (ep >= 0 && (Attacks.pawn(us ^ 1, ep) & pos.pieces(us, Position.PAWN)) != 0) return null;
+		// The GUI lets a king be left in check, the tables hold no such position
+		if (pos.pieces(us ^ 1, Position.KING) == 0 || pos.pieces(us, Position.KING) == 0
+				|| pos.attackersTo(pos.king(us ^ 1), us) != 0) return null;
+		long key = TablebaseIndex.materialKey(pos, flip);
+		for (Table table : tables) {
+			if (table.index.key == key) return table;
+		}
+		return null;
+	}
+
+	/**
+	 * Encode a win in some plies
+	 *
+	 * @param plies	The plies to mate, 1 to 127
+	 * @return		The .dtm value
+	 */
+	static byte win(int plies) { return (byte) plies; }
+
+	/**
+	 * Encode a loss in some plies
+	 *
+	 * @param plies	The plies to mate, 0 to 127
+	 * @return		The .dtm value
+	 */
+	static byte loss(int plies) { return (byte) (-plies - 1); }
+
+	/**
+	 * Decode the plies to mate
+	 *
+	 * @param value	The .dtm value
+	 * @return		The plies, -1 for a draw
+	 */
+	static int plies(byte value) { return value > 0 ? value : value < 0 ? -value - 1 : -1; }
+}
@@ -0,0 +1,652 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds endgame tablebases by retrograde analysis, see Tablebase
+ *
+ * A material's positions are solved one distance to mate at a time.
+ * Checkmates are lost in 0 plies; a position with a move to one
+ * lost in n plies is won in n + 1; a position whose moves all reach
+ * positions won in at most n plies, one of them in exactly n, is
+ * lost in n + 1. Only moves that keep the material stay in the
+ * table, and they are unmade from the newly solved positions to
+ * find the ones to look at next. Captures and promotions lead to
+ * smaller materials, which are built first and looked up once at
+ * the start. Whatever is left unsolved is a draw.
+ *
+ * Every pass is split over a fork/join pool by index range, each
+ * worker thread using its own position and move buffer.
+ *
+ * Usage:
+ *	java engine.TablebaseGenerator [-threads n] [-dir path] material...
+ * for example KQvK KRvK KPvK KBNvK
+ *
+ * @author Siwen Wang
+ */
+public class TablebaseGenerator {
+
+	/**
+	 * States of a position while solving
+	 */
+	private static final byte UNKNOWN = 0;
+	private static final byte INVALID = 1;
+	private static final byte SOLVED = 2;
+
+	/**
+	 * No capture or promotion in a position
+	 */
+	private static final byte NO_CONVERSION = Byte.MIN_VALUE;
+
+	/**
+	 * The most plies to mate a .dtm value holds
+	 */
+	private static final int MAX_PLIES = 126;
+
+	/**
+	 * Indexes a task handles without splitting
+	 */
+	private static final int CHUNK = 1 << 14;
+
+	/**
+	 * The pool the passes run in
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The directory of the files
+	 */
+	private final Path dir;
+
+	/**
+	 * The values of the materials solved or loaded, by name
+	 */
+	private final Map<String, Solved> solved = new LinkedHashMap<>();
+
+	/**
+	 * The position and move buffer of each worker thread
+	 */
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+	/**
+	 * Told about each material built, or null
+	 */
+	private Progress progress;
+
+	/**
+	 * Something told about each material built
+	 */
+	public interface Progress {
+
+		/**
+		 * A material was built and written
+		 *
+		 * @param name	The material
+		 * @param size	The number of positions
+		 * @param nanos	The time it took in nanoseconds
+		 */
+		void built(String name, int size, long nanos);
+	}
+
+	/**
+	 * A material and the .dtm values of its positions
+	 */
+	private static final class Solved {
+
+		/**
+		 * The material's indexing
+		 */
+		final TablebaseIndex index;
+
+		/**
+		 * The value of each index
+		 */
+		final byte[] values;
+
+		/**
+		 * Create a solved material
+		 *
+		 * @param index		The material's indexing
+		 * @param values	The value of each index
+		 */
+		Solved(TablebaseIndex index, byte[] values) {
+			this.index = index;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * The scratch state of one thread
+	 */
+	private static final class Worker {
+
+		/**
+		 * The position set up from an index
+		 */
+		final Position pos = new Position();
+
+		/**
+		 * The squares of its pieces, see TablebaseIndex.setUp
+		 */
+		final int[] squares = {-1, -1, -1, -1};
+
+		/**
+		 * The legal moves of the position
+		 */
+		final int[] moves = new int[MoveGen.MAX_MOVES];
+	}
+
+	/**
+	 * Something done for each index of a range
+	 */
+	private interface Pass {
+
+		/**
+		 * Handle one index
+		 *
+		 * @param worker	The calling thread's scratch state
+		 * @param i			The index
+		 */
+		void run(Worker worker, int i);
+	}
+
+	/**
+	 * A range of indexes to run a pass over
+	 */
+	private final class Range extends RecursiveAction {
+
+		/**
+		 * Serial ID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The pass
+		 */
+		private final Pass pass;
+
+		/**
+		 * The first index and one past the last
+		 */
+		private final int from;
+		private final int to;
+
+		/**
+		 * Create a range
+		 *
+		 * @param pass	The pass
+		 * @param from	The first index
+		 * @param to	One past the last index
+		 */
+		Range(Pass pass, int from, int to) {
+			this.pass = pass;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Range(pass, from, middle), new Range(pass, middle, to));
+				return;
+			}
+			Worker worker = workers.get();
+			for (int i = from; i < to; i++)
+				pass.run(worker, i);
+		}
+	}
+
+	/**
+	 * Create a generator
+	 *
+	 * @param dir		The directory to write to, and to read smaller materials from
+	 * @param threads	The number of worker threads
+	 */
+	public TablebaseGenerator(Path dir, int threads) {
+		this.dir = dir;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Build a material and the smaller ones it converts to, unless
+	 * their files exist, and write them
+	 *
+	 * @param name			The material, like KRvK, the stronger side first
+	 * @throws IOException	If a file can't be read or written
+	 */
+	public void generate(String name) throws IOException {
+		if (solved.containsKey(name)) return;
+		TablebaseIndex index = new TablebaseIndex(name);
+		for (String smaller : conversions(name))
+			generate(smaller);
+		Path file = dir.resolve(name + Tablebase.EXTENSIONS[Tablebase.DTM]);
+		if (Files.exists(file)) {
+			byte[] bytes = Files.readAllBytes(file);
+			ByteBuffer header = ByteBuffer.wrap(bytes);
+			if (bytes.length != Tablebase.HEADER + index.size || header.getInt(0) != Tablebase.MAGIC)
+				throw new IOException("Not a " + name + " tablebase: " + file);
+			byte[] values = new byte[index.size];
+			System.arraycopy(bytes, Tablebase.HEADER, values, 0, values.length);
+			solved.put(name, new Solved(index, values));
+			return;
+		}
+		long start = System.nanoTime();
+		byte[] values = solve(index);
+		solved.put(name, new Solved(index, values));
+		write(index, values);
+		if (progress != null) progress.built(name, index.size, System.nanoTime() - start);
+	}
+
+	/**
+	 * Set what is told about each material built
+	 *
+	 * @param progress	The listener, or null for none
+	 */
+	public void setProgress(Progress progress) { this.progress = progress; }
+
+	/**
+	 * Get the values of a material built or loaded by this generator
+	 *
+	 * @param name	The material
+	 * @return		The .dtm value of each index, or null
+	 */
+	byte[] values(String name) {
+		Solved table = solved.get(name);
+		return table == null ? null : table.values;
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	public void shutdown() { pool.shutdown(); }
+
+	/**
+	 * Get the materials a capture or promotion leads to
+	 *
+	 * @param name	The material
+	 * @return		Their names, the stronger side first
+	 */
+	static List<String> conversions(String name) {
+		String[] sides = name.split("v");
+		List<String> smaller = new ArrayList<>();
+		for (int color = 0; color < 2; color++) {
+			String own = sides[color];
+			String other = sides[color ^ 1];
+			for (int i = 1; i < own.length(); i++) {
+				// The piece is captured
+				String rest = own.substring(0, i) + own.substring(i + 1);
+				add(smaller, rest, other, color);
+				if (own.charAt(i) != 'P') continue;
+				for (char promotion : "QRBN".toCharArray()) {
+					String promoted = sort(rest + promotion);
+					add(smaller, promoted, other, color);
+					// Promoting with a capture
+					for (int j = 1; j < other.length(); j++)
+						add(smaller, promoted, other.substring(0, j) + other.substring(j + 1), color);
+				}
+			}
+		}
+		return smaller;
+	}
+
+	/**
+	 * Add a material once, with its sides in the right order
+	 *
+	 * @param names	The materials
+	 * @param own	The pieces of one side
+	 * @param other	The pieces of the other
+	 * @param color	The color of the first side
+	 */
+	private static void add(List<String> names, String own, String other, int color) {
+		Position pos = new Position();
+		String white = color == 0 ? own : other;
+		String black = color == 0 ? other : own;
+		// Put the pieces anywhere, only the name of the material is wanted
+		int sq = 0;
+		for (char c : white.toCharArray())
+			pos.put(sq++, Position.code(Position.WHITE, TablebaseIndex.LETTERS.indexOf(c)));
+		for (char c : black.toCharArray())
+			pos.put(sq++, Position.code(Position.BLACK, TablebaseIndex.LETTERS.indexOf(c)));
+		String name = TablebaseIndex.nameOf(pos);
+		if (!names.contains(name)) names.add(name);
+	}
+
+	/**
+	 * Sort the pieces of a side, king first, strongest next
+	 *
+	 * @param side	The letters
+	 * @return		The sorted letters
+	 */
+	private static String sort(String side) {
+		StringBuilder sorted = new StringBuilder();
+		for (int type = Position.KING; type >= Position.PAWN; type--) {
+			char letter = TablebaseIndex.LETTERS.charAt(type);
+			for (char c : side.toCharArray())
+				if (c == letter) sorted.append(c);
+		}
+		return sorted.toString();
+	}
+
+	/**
+	 * Solve every position of a material
+	 *
+	 * @param index	The material's indexing
+	 * @return		The .dtm value of each index
+	 */
+	private byte[] solve(TablebaseIndex index) {
+		byte[] values = new byte[index.size];
+		byte[] states = new byte[index.size];
+		byte[] conversions = new byte[index.size];
+		byte[] candidates = new byte[index.size];
+
+		// Mates, stalemates, and the best capture or promotion of each position
+		run(index, (w, i) -> init(index, values, states, conversions, w, i));
+		// No level after the last one a conversion solves can solve anything new
+		int lastConversion = 0;
+		for (int i = 0; i < index.size; i++) {
+			if (states[i] == SOLVED) lastConversion = Math.max(lastConversion, Tablebase.plies(values[i]));
+			else if (conversions[i] != NO_CONVERSION)
+				lastConversion = Math.max(lastConversion, Tablebase.plies(conversions[i]));
+		}
+
+		for (int level = 0; level < MAX_PLIES; level++) {
+			int plies = level;
+			LongAdder solvedNow = new LongAdder();
+			// Positions won by a capture or promotion in exactly this many plies
+			run(index, (w, i) -> {
+				if (states[i] == UNKNOWN && conversions[i] == Tablebase.win(plies) && plies > 0) {
+					values[i] = conversions[i];
+					states[i] = SOLVED;
+				}
+			});
+			// Unmake the moves into the positions solved in this many plies
+			run(index, (w, i) -> {
+				if (states[i] == SOLVED && Tablebase.plies(values[i]) == plies)
+					unmove(index, values, states, candidates, w, i, plies, solvedNow);
+			});
+			// Positions whose last move left to look at was just solved, or
+			// whose capture or promotion loses in this many plies
+			run(index, (w, i) -> {
+				boolean candidate = candidates[i] != 0
+						|| (conversions[i] != NO_CONVERSION && conversions[i] == Tablebase.loss(plies + 1));
+				candidates[i] = 0;
+				if (candidate && states[i] == UNKNOWN
+						&& isLost(index, values, states, conversions, w, i, plies)) {
+					values[i] = Tablebase.loss(plies + 1);
+					states[i] = SOLVED;
+					solvedNow.increment();
+				}
+			});
+			if (solvedNow.sum() == 0 && level >= lastConversion) break;
+		}
+		return values;
+	}
+
+	/**
+	 * Look at a position before solving: mark it invalid, or the
+	 * same as another index by symmetry, solve it
+	 * if it has no moves or only captures and promotions, and keep
+	 * the best of those
+	 *
+	 * @param index			The material's indexing
+	 * @param values		The value of each index
+	 * @param states		The state of each index
+	 * @param conversions	The best capture or promotion of each index
+	 * @param w				The calling thread's scratch state
+	 * @param i				The index
+	 */
+	private void init(TablebaseIndex index, byte[] values, byte[] states, byte[] conversions,
+			Worker w, int i) {
+		Position pos = w.pos;
+		conversions[i] = NO_CONVERSION;
+		if (!index.setUp(i, pos, w.squares) || index.index(pos, false) != i
+				|| pos.attackersTo(pos.king(pos.sideToMove() ^ 1), pos.sideToMove()) != 0) {
+			states[i] = INVALID;
+			return;
+		}
+		int n = MoveGen.generate(pos, w.moves);
+		if (n == 0) {
+			values[i] = pos.inCheck() ? Tablebase.loss(0) : 0;
+			states[i] = SOLVED;
+			return;
+		}
+		byte best = NO_CONVERSION;
+		int inTable = 0;
+		for (int m = 0; m < n; m++) {
+			int move = w.moves[m];
+			boolean converts = pos.pieceOn(Moves.to(move)) != Position.EMPTY
+					|| Moves.kind(move) == Moves.EN_PASSANT || Moves.kind(move) == Moves.PROMOTION;
+			if (!converts) {
+				inTable++;
+				continue;
+			}
+			pos.make(move);
+			byte value = parent(lookUp(pos));
+			pos.unmake();
+			if (rank(value) > rank(best)) best = value;
+		}
+		conversions[i] = best;
+		if (inTable == 0) {
+			values[i] = best;
+			states[i] = SOLVED;
+		}
+	}
+
+	/**
+	 * Unmake every move into a position just solved: the positions
+	 * before a lost one are won, the ones before a won one may be
+	 * lost and are marked to be looked at
+	 *
+	 * @param index			The material's indexing
+	 * @param values		The value of each index
+	 * @param states		The state of each index
+	 * @param candidates	The marks of the positions to look at
+	 * @param w				The calling thread's scratch state
+	 * @param i				The index solved
+	 * @param plies			Its plies to mate
+	 * @param solvedNow		Counts the positions solved
+	 */
+	private void unmove(TablebaseIndex index, byte[] values, byte[] states, byte[] candidates,
+			Worker w, int i, int plies, LongAdder solvedNow) {
+		Position pos = w.pos;
+		index.setUp(i, pos, w.squares);
+		int side = pos.sideToMove();
+		int mover = side ^ 1;
+		boolean lost = values[i] < 0;
+		long occupied = pos.occupancy();
+		for (long pieces = pos.occupancy(mover); pieces != 0; pieces &= pieces - 1) {
+			int to = Long.numberOfTrailingZeros(pieces);
+			int code = pos.pieceOn(to);
+			long froms;
+			if (Position.typeOf(code) == Position.PAWN) {
+				// A pawn came one square back, or two from its first rank
+				int back = mover == Position.WHITE ? -8 : 8;
+				int from = to + back;
+				froms = 0;
+				if ((occupied & (1L << from)) == 0) {
+					if ((from >> 3) != (mover == Position.WHITE ? 0 : 7)) froms |= 1L << from;
+					int start = from + back;
+					if ((start >> 3) == (mover == Position.WHITE ? 1 : 6)
+							&& (occupied & (1L << start)) == 0)
+						froms |= 1L << start;
+				}
+			} else froms = Attacks.of(code, to, occupied) & ~occupied;
+			for (; froms != 0; froms &= froms - 1) {
+				int from = Long.numberOfTrailingZeros(froms);
+				pos.move(to, from);
+				pos.setSideToMove(mover);
+				// The side that didn't move can't be in check before the move
+				if (pos.attackersTo(pos.king(side), mover) == 0) {
+					int before = index.index(pos, false);
+					if (states[before] == UNKNOWN) {
+						if (lost) {
+							values[before] = Tablebase.win(plies + 1);
+							states[before] = SOLVED;
+							solvedNow.increment();
+						} else candidates[before] = 1;
+					}
+				}
+				pos.setSideToMove(side);
+				pos.move(from, to);
+			}
+		}
+	}
+
+	/**
+	 * Check whether every move of a position reaches a position won
+	 * in at most some plies, so it's lost in one more
+	 *
+	 * @param index			The material's indexing
+	 * @param values		The value of each index
+	 * @param states		The state of each index
+	 * @param conversions	The best capture or promotion of each index
+	 * @param w				The calling thread's scratch state
+	 * @param i				The index
+	 * @param plies			The plies
+	 * @return				true if it's lost in plies + 1
+	 */
+	private boolean isLost(TablebaseIndex index, byte[] values, byte[] states, byte[] conversions,
+			Worker w, int i, int plies) {
+		byte conversion = conversions[i];
+		if (conversion != NO_CONVERSION
+				&& (conversion >= 0 || Tablebase.plies(conversion) > plies + 1))
+			return false;
+		Position pos = w.pos;
+		index.setUp(i, pos, w.squares);
+		int n = MoveGen.generate(pos, w.moves);
+		for (int m = 0; m < n; m++) {
+			int move = w.moves[m];
+			if (pos.pieceOn(Moves.to(move)) != Position.EMPTY
+					|| Moves.kind(move) == Moves.EN_PASSANT || Moves.kind(move) == Moves.PROMOTION)
+				continue;
+			pos.make(move);
+			int after = index.index(pos, false);
+			pos.unmake();
+			if (states[after] != SOLVED || values[after] <= 0 || Tablebase.plies(values[after]) > plies)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Look up a position of a smaller material
+	 *
+	 * @param pos	The position, after a capture or promotion
+	 * @return		Its .dtm value
+	 */
+	private byte lookUp(Position pos) {
+		long key = TablebaseIndex.materialKey(pos, false);
+		long flipped = TablebaseIndex.materialKey(pos, true);
+		for (Solved table : solved.values()) {
+			if (table.index.key == key) return table.values[table.index.index(pos, false)];
+			if (table.index.key == flipped) return table.values[table.index.index(pos, true)];
+		}
+		throw new IllegalStateException("Material not built: " + TablebaseIndex.nameOf(pos));
+	}
+
+	/**
+	 * Turn the value of a position into the value of the position
+	 * a move before it
+	 *
+	 * @param value	The .dtm value after the move
+	 * @return		The .dtm value before it
+	 */
+	private static byte parent(byte value) {
+		if (value == 0) return 0;
+		int plies = Tablebase.plies(value) + 1;
+		return value < 0 ? Tablebase.win(plies) : Tablebase.loss(plies);
+	}
+
+	/**
+	 * Order values for the side to move: quicker wins first, then
+	 * draws, then slower losses
+	 *
+	 * @param value	A .dtm value, or NO_CONVERSION
+	 * @return		Higher for better
+	 */
+	private static int rank(byte value) {
+		if (value == NO_CONVERSION) return Integer.MIN_VALUE;
+		if (value == 0) return 0;
+		int plies = Tablebase.plies(value);
+		return value > 0 ? 1000 - plies : -1000 + plies;
+	}
+
+	/**
+	 * Run a pass over every index in the pool
+	 *
+	 * @param index	The material's indexing
+	 * @param pass	The pass
+	 */
+	private void run(TablebaseIndex index, Pass pass) {
+		pool.invoke(new Range(pass, 0, index.size));
+	}
+
+	/**
+	 * Write the .dtm and .wdl files of a material
+	 *
+	 * @param index			The material's indexing
+	 * @param values		The .dtm value of each index
+	 * @throws IOException	If a file can't be written
+	 */
+	private void write(TablebaseIndex index, byte[] values) throws IOException {
+		Files.createDirectories(dir);
+		for (int kind = Tablebase.DTM; kind <= Tablebase.WDL; kind++) {
+			ByteBuffer file = ByteBuffer.allocate(Tablebase.HEADER + Tablebase.bytes(kind, index.size));
+			file.putInt(Tablebase.MAGIC).putInt(kind).putInt(index.size).putInt(0);
+			if (kind == Tablebase.DTM) file.put(values);
+			else {
+				for (int i = 0; i < values.length; i += 4) {
+					int packed = 0;
+					for (int j = 0; j < 4 && i + j < values.length; j++) {
+						int wdl = values[i + j] > 0 ? 1 : values[i + j] < 0 ? 2 : 0;
+						packed |= wdl << (j * 2);
+					}
+					file.put((byte) packed);
+				}
+			}
+			Files.write(dir.resolve(index.name + Tablebase.EXTENSIONS[kind]), file.array());
+		}
+	}
+
+	/**
+	 * Build tablebases from the command line
+	 *
+	 * @param args	Options, then the materials
+	 * @throws IOException	If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path dir = Paths.get("tablebases");
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-dir": dir = Paths.get(args[++i]); break;
+			default: names.add(args[i]);
+			}
+		}
+		if (names.isEmpty()) {
+			System.out.println("Usage: java engine.TablebaseGenerator [-threads n] [-dir path] material...");
+			return;
+		}
+		TablebaseGenerator generator = new TablebaseGenerator(dir, threads);
+		System.out.println(threads + " threads, writing to " + dir);
+		generator.setProgress((name, size, nanos) ->
+				System.out.printf("%s: %d positions in %.1f s%n", name, size, nanos / 1e9));
+		for (String name : names)
+			generator.generate(name);
+		generator.shutdown();
+	}
+}
@@ -0,0 +1,351 @@
+package engine;
+
+import static engine.Position.BLACK;
+import static engine.Position.KING;
+import static engine.Position.PAWN;
+import static engine.Position.WHITE;
+
+/**
+ * The positions of one endgame material and their indexes in a
+ * tablebase, for example KQvK or KRvKN
+ *
+ * The pieces are ordered white king, black king, then the other
+ * white pieces and the other black pieces, strongest first, the way
+ * the name lists them. A position's index is the side to move, then
+ * the square of each piece in that order, in base 64. Symmetry
+ * cuts the white king down: a table without pawns may turn and
+ * mirror the board until it's in the triangle a1-d1-d4 (10
+ * squares), one with pawns may only mirror files, to a1-d8 (32).
+ * Symmetric positions share the one index that index returns; the
+ * other indexes they could have are left out as invalid.
+ *
+ * The material is flipped to look up a position where black has
+ * the stronger side: the colors swap and the board turns over.
+ *
+ * @author Siwen Wang
+ */
+final class TablebaseIndex {
+
+	/**
+	 * The most pieces a table may have, kings included
+	 */
+	static final int MAX_PIECES = 4;
+
+	/**
+	 * Piece letters by type, pawn to king
+	 */
+	static final String LETTERS = "PNBRQK";
+
+	/**
+	 * The name, like KQvK
+	 */
+	final String name;
+
+	/**
+	 * The piece code of each piece, in index order
+	 */
+	final int[] codes;
+
+	/**
+	 * Whether there are pawns, which limits symmetry
+	 */
+	final boolean pawns;
+
+	/**
+	 * The number of white king squares after symmetry, 10 or 32
+	 */
+	private final int kingSquares;
+
+	/**
+	 * The number of indexes
+	 */
+	final int size;
+
+	/**
+	 * The material key of the table, see materialKey
+	 */
+	final long key;
+
+	/**
+	 * The index of each white king square in the triangle a1-d1-d4
+	 */
+	private static final int[] TRIANGLE = new int[64];
+
+	static {
+		java.util.Arrays.fill(TRIANGLE, -1);
+		int i = 0;
+		for (int sq = 0; sq < 64; sq++) {
+			if ((sq & 7) <= 3 && (sq >> 3) <= (sq & 7)) TRIANGLE[sq] = i++;
+		}
+	}
+
+	/**
+	 * Create the index of a material
+	 *
+	 * @param name	The material, white pieces, v, black pieces, like KRvKN
+	 */
+	TablebaseIndex(String name) {
+		String[] sides = name.split("v");
+		if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")
+				|| sides[0].length() + sides[1].length() > MAX_PIECES)
+			throw new IllegalArgumentException("Invalid tablebase material: " + name);
+		this.name = name;
+		codes = new int[sides[0].length() + sides[1].length()];
+		codes[0] = Position.code(WHITE, KING);
+		codes[1] = Position.code(BLACK, KING);
+		int n = 2;
+		boolean pawns = false;
+		long key = 0;
+		for (int color = WHITE; color <= BLACK; color++) {
+			String side = sides[color];
+			for (int i = 0; i < side.length(); i++) {
+				int type = LETTERS.indexOf(side.charAt(i));
+				if (type < 0 || (type == KING) != (i == 0))
+					throw new IllegalArgumentException("Invalid tablebase material: " + name);
+				if (i > 0) codes[n++] = Position.code(color, type);
+				if (type == PAWN) pawns = true;
+				key += 1L << (4 * Position.code(color, type));
+			}
+		}
+		this.pawns = pawns;
+		this.key = key;
+		kingSquares = pawns ? 32 : 10;
+		int size = 2 * kingSquares;
+		for (int i = 1; i < codes.length; i++) size *= 64;
+		this.size = size;
+	}
+
+	/**
+	 * Get the material key of a position: the number of pieces of
+	 * each piece code, four bits each
+	 *
+	 * @param pos	The position
+	 * @param flip	Whether to swap the colors
+	 * @return		The key
+	 */
+	static long materialKey(Position pos, boolean flip) {
+		long key = 0;
+		for (int code = 0; code < 12; code++) {
+			int count = Long.bitCount(pos.pieces(Position.colorOf(code), Position.typeOf(code)));
+			int to = flip ? (code + 6) % 12 : code;
+			key += (long) count << (4 * to);
+		}
+		return key;
+	}
+
+	/**
+	 * Get the name of the material of a position, the stronger
+	 * side first
+	 *
+	 * @param pos	The position
+	 * @return		The name, like KQvK
+	 */
+	static String nameOf(Position pos) {
+		String white = sideOf(pos, WHITE);
+		String black = sideOf(pos, BLACK);
+		return stronger(white, black) ? white + "v" + black : black + "v" + white;
+	}
+
+	/**
+	 * Get the pieces of one side, strongest first
+	 *
+	 * @param pos	The position
+	 * @param color	The side
+	 * @return		The letters, like KRN
+	 */
+	private static String sideOf(Position pos, int color) {
+		StringBuilder side = new StringBuilder();
+		for (int type = KING; type >= PAWN; type--) {
+			for (int i = Long.bitCount(pos.pieces(color, type)); i > 0; i--)
+				side.append(LETTERS.charAt(type));
+		}
+		return side.toString();
+	}
+
+	/**
+	 * Check whether one side's pieces go first in a name: more
+	 * material, or the same and the earlier letters
+	 *
+	 * @param a	The pieces of one side
+	 * @param b	The pieces of the other
+	 * @return	true if a goes first
+	 */
+	private static boolean stronger(String a, String b) {
+		int difference = worth(a) - worth(b);
+		if (difference != 0) return difference > 0;
+		for (int i = 0; i < Math.min(a.length(), b.length()); i++) {
+			int ta = LETTERS.indexOf(a.charAt(i));
+			int tb = LETTERS.indexOf(b.charAt(i));
+			if (ta != tb) return ta > tb;
+		}
+		return a.length() >= b.length();
+	}
+
+	/**
+	 * Get the material of one side's pieces
+	 *
+	 * @param side	The letters
+	 * @return		The material in centipawns
+	 */
+	private static int worth(String side) {
+		int worth = 0;
+		for (int i = 0; i < side.length(); i++)
+			worth += Evaluation.VALUES[LETTERS.indexOf(side.charAt(i))];
+		return worth;
+	}
+
+	/**
+	 * Get the index of a position of this material. Symmetric
+	 * positions get the same one: with the white king on the
+	 * diagonal, the smaller of the two indexes either side of it,
+	 * and identical pieces in the order of their squares.
+	 *
+	 * @param pos	The position, with this material, or the flipped one
+	 * @param flip	Whether black has this table's white pieces
+	 * @return		The index
+	 */
+	int index(Position pos, boolean flip) {
+		int wk = pos.king(WHITE ^ (flip ? 1 : 0)) ^ (flip ? 56 : 0);
+		int transform = transform(wk);
+		int index = index(pos, flip, transform);
+		int king = apply(wk, transform);
+		if (!pawns && (king >> 3) == (king & 7))
+			index = Math.min(index, index(pos, flip, transform | 4));
+		return index;
+	}
+
+	/**
+	 * Get the index of a position under a symmetry
+	 *
+	 * @param pos		The position
+	 * @param flip		Whether black has this table's white pieces
+	 * @param transform	The symmetry, see transform
+	 * @return			The index
+	 */
+	private int index(Position pos, boolean flip, int transform) {
+		int flipColor = flip ? 1 : 0;
+		int flipBoard = flip ? 56 : 0;
+		int wk = apply(pos.king(WHITE ^ flipColor) ^ flipBoard, transform);
+		int index = (pos.sideToMove() ^ flipColor) * kingSquares + kingIndex(wk);
+		long bits = 0;
+		int previous = -1;
+		for (int i = 1; i < codes.length; i++) {
+			int code = codes[i];
+			int sq;
+			// Identical pieces are next to each other, take their squares in turn
+			if (code == codes[i - 1]) {
+				bits &= bits - 1;
+				sq = apply(Long.numberOfTrailingZeros(bits) ^ flipBoard, transform);
+				if (sq < previous) {
+					// Swap them, the lower square first
+					index = (index - previous + sq) * 64 + previous;
+					continue;
+				}
+			} else {
+				bits = pos.pieces(Position.colorOf(code) ^ flipColor, Position.typeOf(code));
+				sq = apply(Long.numberOfTrailingZeros(bits) ^ flipBoard, transform);
+			}
+			index = index * 64 + sq;
+			previous = sq;
+		}
+		return index;
+	}
+
+	/**
+	 * Set a position up from an index, replacing its pieces. The
+	 * position has no castling rights and no en passant square.
+	 *
+	 * @param index		The index
+	 * @param pos		The position, only holding the pieces of squares
+	 * @param squares	The squares of the pieces now on the position, in
+	 * 					index order, or -1; updated to the new ones
+	 * @return			false if two pieces share a square or a pawn is on
+	 * 					a first or last rank
+	 */
+	boolean setUp(int index, Position pos, int[] squares) {
+		for (int i = 0; i < codes.length; i++) {
+			if (squares[i] >= 0) pos.remove(squares[i]);
+			squares[i] = -1;
+		}
+		for (int i = codes.length - 1; i >= 1; i--) {
+			squares[i] = index & 63;
+			index >>>= 6;
+		}
+		squares[0] = kingSquare(index % kingSquares);
+		int side = index / kingSquares;
+		long occupied = 0;
+		for (int i = 0; i < codes.length; i++) {
+			long bit = 1L << squares[i];
+			if ((occupied & bit) != 0) {
+				java.util.Arrays.fill(squares, -1);
+				return false;
+			}
+			occupied |= bit;
+		}
+		for (int i = 0; i < codes.length; i++) {
+			if (Position.typeOf(codes[i]) == PAWN && (squares[i] < 8 || squares[i] >= 56)) {
+				java.util.Arrays.fill(squares, -1);
+				return false;
+			}
+		}
+		for (int i = 0; i < codes.length; i++)
+			pos.put(squares[i], codes[i]);
+		pos.setSideToMove(side);
+		return true;
+	}
+
+	/**
+	 * Get the symmetry that brings the white king to its part of
+	 * the board: bit 0 mirrors files, bit 1 ranks, bit 2 swaps
+	 * files and ranks
+	 *
+	 * @param wk	The white king's square
+	 * @return		The symmetry
+	 */
+	private int transform(int wk) {
+		int transform = (wk & 7) > 3 ? 1 : 0;
+		if (pawns) return transform;
+		wk = apply(wk, transform);
+		if ((wk >> 3) > 3) {
+			transform |= 2;
+			wk ^= 56;
+		}
+		if ((wk >> 3) > (wk & 7)) transform |= 4;
+		return transform;
+	}
+
+	/**
+	 * Apply a symmetry to a square
+	 *
+	 * @param sq		The square
+	 * @param transform	The symmetry, see transform
+	 * @return			The square it maps to
+	 */
+	private static int apply(int sq, int transform) {
+		if ((transform & 1) != 0) sq ^= 7;
+		if ((transform & 2) != 0) sq ^= 56;
+		if ((transform & 4) != 0) sq = (sq >> 3) | (sq & 7) << 3;
+		return sq;
+	}
+
+	/**
+	 * Get the index of a white king square after symmetry
+	 *
+	 * @param sq	The square
+	 * @return		0 to kingSquares - 1
+	 */
+	private int kingIndex(int sq) { return pawns ? (sq >> 3) * 4 + (sq & 7) : TRIANGLE[sq]; }
+
+	/**
+	 * Get the white king square of an index
+	 *
+	 * @param i	0 to kingSquares - 1
+	 * @return	The square
+	 */
+	private int kingSquare(int i) {
+		if (pawns) return (i >> 2) * 8 + (i & 3);
+		for (int sq = 0; ; sq++) {
+			if (TRIANGLE[sq] == i) return sq;
+		}
+	}
+}
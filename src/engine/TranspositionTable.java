@@ -0,0 +1,315 @@
+package engine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash table of search results, shared by the search threads
+ *
+ * Each entry is two longs, the packed data and the hash XOR the
+ * data. Threads read and write without locks; an entry torn by
+ * two racing writers fails the XOR check and reads as a miss.
+ *
+ * Entries are grouped in buckets of four, 64 bytes, so a probe
+ * touches one cache line. A new result replaces the entry of the
+ * same position, else an empty one, else the one with the lowest
+ * depth, counting entries from earlier searches as shallower.
+ *
+ * The entries live in a heap array or in off-heap memory, see
+ * create; the two only differ in how a long is read and written.
+ *
+ * Data layout:
+ * bits 0-15	best move
+ * bits 16-31	score
+ * bits 32-39	depth
+ * bits 40-41	bound
+ * bits 42-47	age, the search it was stored in
+ *
+ * @author Siwen Wang
+ */
+public abstract class TranspositionTable {
+
+	/**
+	 * Bounds of a stored score
+	 */
+	public static final int EXACT = 1;
+	public static final int LOWER = 2;
+	public static final int UPPER = 3;
+
+	/**
+	 * Set this system property to true to keep tables off the heap
+	 */
+	public static final String OFF_HEAP_PROPERTY = "chess.offHeapHash";
+
+	/**
+	 * Entries per bucket
+	 */
+	static final int BUCKET = 4;
+
+	/**
+	 * Bytes per bucket
+	 */
+	static final int BUCKET_BYTES = BUCKET * 16;
+
+	/**
+	 * Depth an entry is worth less for each search it's older by
+	 */
+	private static final int AGE_PENALTY = 8;
+
+	/**
+	 * Number of buckets minus one
+	 */
+	private final long mask;
+
+	/**
+	 * The age of the current search, 0 to 63
+	 */
+	private volatile int age;
+
+	/**
+	 * Probes that found their position
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Probes that didn't
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Stores that replaced another position
+	 */
+	private final LongAdder overwrites = new LongAdder();
+
+	/**
+	 * Create a table
+	 *
+	 * @param buckets	The number of buckets, a power of two
+	 */
+	TranspositionTable(long buckets) { mask = buckets - 1; }
+
+	/**
+	 * Create a table, off the heap if the system property
+	 * chess.offHeapHash is true
+	 *
+	 * @param megabytes	The size, rounded down to a power of two buckets
+	 * @return			The table
+	 */
+	public static TranspositionTable create(int megabytes) {
+		return create(megabytes, Boolean.getBoolean(OFF_HEAP_PROPERTY));
+	}
+
+	/**
+	 * Create a table
+	 *
+	 * @param megabytes	The size, rounded down to a power of two buckets
+	 * @param offHeap	Whether to keep the entries in direct memory
+	 * @return			The table
+	 */
+	public static TranspositionTable create(int megabytes, boolean offHeap) {
+		long buckets = bytesFor(megabytes, offHeap) / BUCKET_BYTES;
+		return offHeap ? new OffHeapTable(buckets) : new HeapTable(buckets);
+	}
+
+	/**
+	 * Get the size a table created with a size would really have
+	 *
+	 * @param megabytes	The size asked for
+	 * @param offHeap	Whether the entries are in direct memory
+	 * @return			The size in bytes
+	 */
+	public static long bytesFor(int megabytes, boolean offHeap) {
+		long buckets = Long.highestOneBit(Math.max(1, ((long) megabytes << 20) / BUCKET_BYTES));
+		if (!offHeap) buckets = Math.min(buckets, HeapTable.MAX_BUCKETS);
+		return buckets * BUCKET_BYTES;
+	}
+
+	/**
+	 * Read one long of the entries
+	 *
+	 * @param i	The index of the long
+	 * @return	The value
+	 */
+	abstract long read(long i);
+
+	/**
+	 * Write one long of the entries
+	 *
+	 * @param i		The index of the long
+	 * @param value	The value
+	 */
+	abstract void write(long i, long value);
+
+	/**
+	 * Zero every entry, without reallocating
+	 */
+	abstract void zero();
+
+	/**
+	 * Get the size of the entries
+	 *
+	 * @return	The size in bytes
+	 */
+	public long bytes() { return (mask + 1) * BUCKET_BYTES; }
+
+	/**
+	 * Check whether the entries are off the heap
+	 *
+	 * @return	true if they're in direct memory
+	 */
+	public abstract boolean isOffHeap();
+
+	/**
+	 * Look up a position
+	 *
+	 * @param hash	The hash of the position
+	 * @return		The data of its entry, 0 if it's not stored
+	 */
+	public long probe(long hash) {
+		long base = bucket(hash);
+		for (long i = base; i < base + BUCKET * 2; i += 2) {
+			long data = read(i + 1);
+			if ((read(i) ^ data) == hash && data != 0) {
+				hits.increment();
+				return data;
+			}
+		}
+		misses.increment();
+		return 0;
+	}
+
+	/**
+	 * Store the result of a search
+	 *
+	 * @param hash	The hash of the position
+	 * @param move	The best move, or Moves.NONE
+	 * @param score	The score
+	 * @param depth	The depth searched
+	 * @param bound	EXACT, LOWER or UPPER
+	 */
+	public void store(long hash, int move, int score, int depth, int bound) {
+		long base = bucket(hash);
+		long victim = base;
+		int worst = Integer.MAX_VALUE;
+		int current = age;
+		for (long i = base; i < base + BUCKET * 2; i += 2) {
+			long data = read(i + 1);
+			if (data == 0 || (read(i) ^ data) == hash) {
+				// Keep the old move if the new result has none
+				if (data != 0 && move == Moves.NONE) move = move(data);
+				victim = i;
+				worst = -1;
+				break;
+			}
+			int worth = depth(data) - AGE_PENALTY * ((current - age(data)) & 63);
+			if (worth < worst) {
+				worst = worth;
+				victim = i;
+			}
+		}
+		if (worst != -1) overwrites.increment();
+		long data = (move & 0xFFFFL) | (score & 0xFFFFL) << 16 | (long) depth << 32
+				| (long) bound << 40 | (long) current << 42;
+		write(victim, hash ^ data);
+		write(victim + 1, data);
+	}
+
+	/**
+	 * Start a new search, so entries of older ones are replaced first
+	 */
+	public void newSearch() { age = (age + 1) & 63; }
+
+	/**
+	 * Empty the table and reset the counters, keeping its memory
+	 */
+	public void clear() {
+		zero();
+		age = 0;
+		resetCounters();
+	}
+
+	/**
+	 * Reset the hit, miss and overwrite counters
+	 */
+	public void resetCounters() {
+		hits.reset();
+		misses.reset();
+		overwrites.reset();
+	}
+
+	/**
+	 * Get the number of probes that found their position
+	 *
+	 * @return	The number of hits
+	 */
+	public long hits() { return hits.sum(); }
+
+	/**
+	 * Get the number of probes that didn't find their position
+	 *
+	 * @return	The number of misses
+	 */
+	public long misses() { return misses.sum(); }
+
+	/**
+	 * Get the number of stores that replaced another position
+	 *
+	 * @return	The number of overwrites
+	 */
+	public long overwrites() { return overwrites.sum(); }
+
+	/**
+	 * Get the size of the table
+	 *
+	 * @return	The size in megabytes
+	 */
+	public int megabytes() { return (int) (bytes() >> 20); }
+
+	/**
+	 * Get the index of the first entry of a bucket. The high bits
+	 * of the hash pick it, the low ones only once they run out.
+	 *
+	 * @param hash	The hash of the position
+	 * @return		The index of the entry's first long
+	 */
+	private long bucket(long hash) { return (Long.rotateLeft(hash, 32) & mask) * BUCKET * 2; }
+
+	/**
+	 * Get the best move of an entry
+	 *
+	 * @param data	The entry's data
+	 * @return		The packed move
+	 */
+	public static int move(long data) { return (int) data & 0xFFFF; }
+
+	/**
+	 * Get the score of an entry
+	 *
+	 * @param data	The entry's data
+	 * @return		The score
+	 */
+	public static int score(long data) { return (short) (data >>> 16); }
+
+	/**
+	 * Get the depth of an entry
+	 *
+	 * @param data	The entry's data
+	 * @return		The depth
+	 */
+	public static int depth(long data) { return (int) (data >>> 32) & 0xFF; }
+
+	/**
+	 * Get the bound of an entry
+	 *
+	 * @param data	The entry's data
+	 * @return		EXACT, LOWER or UPPER
+	 */
+	public static int bound(long data) { return (int) (data >>> 40) & 3; }
+
+	/**
+	 * Get the age of an entry
+	 *
+	 * @param data	The entry's data
+	 * @return		The age of the search that stored it
+	 */
+	public static int age(long data) { return (int) (data >>> 42) & 63; }
+}
@@ -0,0 +1,97 @@
+package engine;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing
+ *
+ * A position's hash is the XOR of the keys of its pieces on their
+ * squares, its castling rights, its en passant column and, when
+ * black is to move, the side key. Each change to the position
+ * XORs the matching keys in or out, so the hash never has to be
+ * computed from scratch.
+ *
+ * @author Siwen Wang
+ */
+public final class Zobrist {
+
+	/**
+	 * Key of each piece code on each square
+	 */
+	static final long[][] PIECE = new long[12][64];
+
+	/**
+	 * Key of each combination of castling rights
+	 */
+	static final long[] CASTLING = new long[16];
+
+	/**
+	 * Key of each en passant column
+	 */
+	static final long[] EN_PASSANT = new long[8];
+
+	/**
+	 * Key for black to move
+	 */
+	static final long SIDE;
+
+	static {
+		// Fixed seed, so hashes are the same in every run
+		Random random = new Random(0x5EED_C4E55L);
+		for (long[] keys : PIECE) {
+			for (int sq = 0; sq < 64; sq++)
+				keys[sq] = random.nextLong();
+		}
+		for (int i = 0; i < CASTLING.length; i++)
+			CASTLING[i] = random.nextLong();
+		for (int i = 0; i < EN_PASSANT.length; i++)
+			EN_PASSANT[i] = random.nextLong();
+		SIDE = random.nextLong();
+	}
+
+	/**
+	 * No instances
+	 */
+	private Zobrist() {}
+
+	/**
+	 * Get the key of an en passant square
+	 *
+	 * @param sq	The square, or -1
+	 * @return		The key of its column, 0 for no square
+	 */
+	static long enPassant(int sq) { return sq < 0 ? 0 : EN_PASSANT[sq & 7]; }
+
+	/**
+	 * Compute the hash of a position from scratch
+	 *
+	 * @param pos	The position
+	 * @return		The hash
+	 */
+	public static long compute(Position pos) {
+		long hash = 0;
+		for (int sq = 0; sq < 64; sq++) {
+			if (pos.pieceOn(sq) != Position.EMPTY)
+				hash ^= PIECE[pos.pieceOn(sq)][sq];
+		}
+		hash ^= CASTLING[pos.castlingRights()];
+		hash ^= enPassant(pos.epSquare());
+		if (pos.sideToMove() == Position.BLACK) hash ^= SIDE;
+		return hash;
+	}
+
+	/**
+	 * Compute the pawn hash of a position from scratch
+	 *
+	 * @param pos	The position
+	 * @return		The hash of its pawns
+	 */
+	public static long computePawns(Position pos) {
+		long hash = 0;
+		for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+			for (long bits = pos.pieces(color, Position.PAWN); bits != 0; bits &= bits - 1)
+				hash ^= PIECE[Position.code(color, Position.PAWN)][Long.numberOfTrailingZeros(bits)];
+		}
+		return hash;
+	}
+}
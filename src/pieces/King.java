@@ -1,6 +1,8 @@
 package pieces;
 
 import java.util.ArrayList;
+import engine.Attacks;
+import enums.ChessColor;
 import shared.Move;
 
 /**
@@ -52,32 +54,8 @@ public class King extends Piece {
 	 */
 	@Override
 	public ArrayList<Move> validMoves(Piece[][] board) {
-		ArrayList<Move> moves = new ArrayList<>();
-		ArrayList<String> checkedCell = getCheckedCell(board);
-
-		for (int ro : new int[] {-1, 0, 1}) {
-			for (int co : new int[] {-1, 0, 1}) {
-				Move currMove = null;
-				int tempRow = row + ro;
-				int tempCol = col + co;
-				if (tempRow < 0 || tempCol < 0 || tempRow >= 8 || tempCol >= 8)
-					continue;
-
-				if (board[tempRow][tempCol] == null ||
-						!board[tempRow][tempCol].getColor().equals(color))
-					currMove = new Move(row, col, tempRow, tempCol);
-
-				if (currMove == null) continue;
-				else {
-					int row = currMove.getRow();
-					int col = currMove.getCol();
-					String s = String.valueOf(row) + String.valueOf(col);
-					if (checkedCell.contains(s)) continue;
-					else moves.add(currMove);
-				}
-			}
-		}
-		return moves;
+		long targets = Attacks.king(row * 8 + col) & ~occupancy(board, color)[1];
+		return movesTo(targets & ~getCheckedCells(board));
 	}
 
 	/**
@@ -93,6 +71,24 @@ public class King extends Piece {
 	 */
 	@Override
 	public int isValidMove(Piece[][] board, int desRow, int desCol) {
+		ChessColor enemy = isWhite() ? ChessColor.BLACK : ChessColor.WHITE;
+		return isValidMove(board, desRow, desCol, attackedBy(board, enemy));
+	}
+
+	/**
+	 * Check whether this move is valid, given the squares
+	 * the opponent attacks
+	 * 
+	 * @param board		The board this piece is on
+	 * @param desRow	The destination row
+	 * @param desCol	The destination column
+	 * @param attacked	Bit (row * 8 + column) is set for every square the opponent attacks
+	 * @return			0 - invalid move
+	 * 					1 - valid move
+	 * 					2 - en passant
+	 * 					3 - castle
+	 */
+	public int isValidMove(Piece[][] board, int desRow, int desCol, long attacked) {
 		// Check for valid castle
 		int xMove = desCol - col;
 		int yMove = desRow - row;
@@ -112,8 +108,8 @@ public class King extends Piece {
 				if (board[desRow][tempCol] instanceof Rook) {
 					Rook r = (Rook) board[desRow][tempCol];
 					if (isFirstMove && r.checkIfFirstMove()
-							&& pathSafe(board, xDir)
-							&& !isCheckedAfterCastle(board, desRow, desCol))
+							&& pathSafe(attacked, xDir)
+							&& !isCheckedBeforeCastle(attacked))
 						return 3;
 				}
 				tempCol += xDir;
@@ -128,64 +124,36 @@ public class King extends Piece {
 		return 0;
 	}
 
-	/**
-	 * We want to check whether the input piece is attacking
-	 * the given location on the board
-	 * 
-	 * @param board		The board this piece is on
-	 * @param p			The piece we want to check
-	 * @param r			The target row
-	 * @param c			The target column
-	 * @return			true if the piece is attacking the given locatino
-	 * 					false if not
-	 */
-	private boolean isAttacking(Piece[][] board, Piece p, int r, int c) {
-		ArrayList<Move> validMoves = p.validMoves(board);
-		for (Move m: validMoves) {
-			if (m.getCol() == c && m.getRow() == r)
-				return true;
-		}
-		return false;
-	}
-
 	/**
 	 * Get all the location that's being checked by the enemy
 	 * 
 	 * @param board		The board this piece is on
-	 * @return			List of location that's checked by the enemy
+	 * @return			Bit (row * 8 + column) is set for every location
+	 * 					the checking pieces can move to
 	 */
-	private ArrayList<String> getCheckedCell(Piece[][] board) {
-		ArrayList<String> checkedCell = new ArrayList<>();
-
-		for (Piece p : checkedBy) {
-			ArrayList<Move> validMoves = p.validMoves(board);
-			for (Move m: validMoves) {
-				int row = m.getRow();
-				int col = m.getCol();
-				String s = String.valueOf(row) + String.valueOf(col);
-				checkedCell.add(s);
-			}
-		}
-		return checkedCell;
+	private long getCheckedCells(Piece[][] board) {
+		if (checkedBy.isEmpty()) return 0;
+		// The checkers are all of the other color
+		long[] occupied = occupancy(board, color);
+		long enemy = occupied[0] & ~occupied[1];
+		long checkedCells = 0;
+		for (Piece p : checkedBy)
+			checkedCells |= p.attacks(occupied[0]) & ~enemy;
+		return checkedCells;
 	}
 
 	/**
-	 * Iterate through all pieces that's checking the king before the move
-	 * and update the list
+	 * Replace the list of pieces that's checking the king
 	 * 
 	 * @param board		The board this piece is on
+	 * @param checkers	Bit (row * 8 + column) is set for every checking piece
 	 */
-	public void updateCheckedBy(Piece[][] board) {
-		ArrayList<Piece> temp = new ArrayList<>();
-
-		for (Piece[] rows : board) {
-			for (Piece p: rows) {
-				if ((p == null) || p.getColor().equals(color)) continue;
-				if (isAttacking(board, p, row, col))
-					temp.add(p);
-			}
+	public void updateCheckedBy(Piece[][] board, long checkers) {
+		ArrayList<Piece> temp = new ArrayList<>(Long.bitCount(checkers));
+		for (; checkers != 0; checkers &= checkers - 1) {
+			int sq = Long.numberOfTrailingZeros(checkers);
+			temp.add(board[sq / 8][sq % 8]);
 		}
-
 		checkedBy = temp;
 	}
 
@@ -202,45 +170,36 @@ public class King extends Piece {
 	/**
 	 * Check whether the path to castle is save
 	 * 
-	 * @param board		The board this piece is on
+	 * @param attacked	The squares the opponent attacks
 	 * @param xDir		The direction the king moves towards the rook
 	 * @return			true if the path towards the rook is not attacked
 	 * 					false if otherwise
 	 */
-	private boolean pathSafe(Piece[][] board, int xDir) {
-		for (Piece[] rows : board) {
-			for (Piece p: rows) {
-				if (p == null) continue;
-				else if (p.getColor().equals(color)) continue;
-				else if (isAttacking(board, p, row, col + xDir)
-							|| isAttacking(board, p, row, col + 2*xDir))
-					return false;
-			}
-		}
-		return true;
+	private boolean pathSafe(long attacked, int xDir) {
+		long path = (1L << (row * 8 + col + xDir)) | (1L << (row * 8 + col + 2 * xDir));
+		return (attacked & path) == 0;
 	}
 
 	/**
-	 * Check whether the king is checked after castle
+	 * Check whether the king is checked before castle
 	 * 
-	 * @param board		The board this piece is on
-	 * @param desRow	The destination row
-	 * @param desCol	The destination column
-	 * @return			true if the king is checked at the new location
+	 * @param attacked	The squares the opponent attacks
+	 * @return			true if the king is checked where it stands
 	 * 					false if not
 	 */
-	private boolean isCheckedAfterCastle(Piece[][] board, int desRow, int desCol) {
-		for (Piece[] rows : board) {
-			for (Piece p: rows) {
-				if (p == null) continue;
-				else if (p.getColor().equals(color)) continue;
-				else if (isAttacking(board, p, row, col))
-					return true;
-			}
-		}
-		return false;
+	private boolean isCheckedBeforeCastle(long attacked) {
+		return (attacked & (1L << (row * 8 + col))) != 0;
 	}
 
+	/**
+	 * Get the squares this piece attacks
+	 * 
+	 * @param occupied	Bit (row * 8 + column) is set for every occupied square
+	 * @return			The attacked squares, including the ones holding pieces
+	 */
+	@Override
+	public long attacks(long occupied) { return Attacks.king(row * 8 + col); }
+
 	/**
 	 * Get the type of this piece
 	 */
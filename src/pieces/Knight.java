@@ -1,6 +1,7 @@
 package pieces;
 
 import java.util.ArrayList;
+import engine.Attacks;
 import shared.Move;
 
 /**
@@ -36,23 +37,18 @@ public class Knight extends Piece {
 	 */
 	@Override
 	public ArrayList<Move> validMoves(Piece[][] board) {
-		ArrayList<Move> moves = new ArrayList<>();
-
-		for (int ro : new int[]{-2, -1, 1, 2}) {
-			for (int co : new int[]{-2, -1, 1, 2}) {
-				if (Math.abs(ro) == Math.abs(co)) {continue;}
-
-				if (0 <= row + ro && row + ro < 8
-						&& 0 <= col + co && col + co < 8) {
-					if (board[row + ro][col + co] == null
-							|| !board[row + ro][col + co].getColor().equals(color))
-						moves.add(new Move(row, col, row+ro, col+co));
-				}
-			}
-		}
-		return moves;
+		return movesTo(Attacks.knight(row * 8 + col) & ~occupancy(board, color)[1]);
 	}
 
+	/**
+	 * Get the squares this piece attacks
+	 * 
+	 * @param occupied	Bit (row * 8 + column) is set for every occupied square
+	 * @return			The attacked squares, including the ones holding pieces
+	 */
+	@Override
+	public long attacks(long occupied) { return Attacks.knight(row * 8 + col); }
+
 	/**
 	 * Get the type of this piece
 	 */
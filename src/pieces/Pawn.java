@@ -1,6 +1,8 @@
 package pieces;
 
 import java.util.ArrayList;
+import engine.Attacks;
+import engine.Position;
 import enums.ChessColor;
 import shared.Move;
 
@@ -125,6 +127,15 @@ public class Pawn extends Piece {
 		return 0; // invalid move
 	}
 
+	/**
+	 * Get the squares this piece attacks
+	 * 
+	 * @param occupied	Bit (row * 8 + column) is set for every occupied square
+	 * @return			The attacked squares, including the ones holding pieces
+	 */
+	@Override
+	public long attacks(long occupied) { return Attacks.pawn(isWhite() ? Position.WHITE : Position.BLACK, row * 8 + col); }
+
 	/**
 	 * Get the type of this piece
 	 */
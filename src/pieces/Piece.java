@@ -140,6 +140,70 @@ public abstract class Piece implements Serializable {
 	 */
 	public abstract ArrayList<Move> validMoves(Piece[][] board);
 
+	/**
+	 * Get the squares this piece attacks
+	 * 
+	 * @param occupied	Bit (row * 8 + column) is set for every occupied square
+	 * @return			The attacked squares, including the ones holding pieces
+	 */
+	public abstract long attacks(long occupied);
+
+	/**
+	 * Get every square the pieces of one color attack
+	 * 
+	 * @param board	The board to scan
+	 * @param c		The attacking color
+	 * @return		Bit (row * 8 + column) is set for every attacked square
+	 */
+	protected static long attackedBy(Piece[][] board, ChessColor c) {
+		long occupied = occupancy(board, c)[0];
+		long attacked = 0;
+		for (Piece[] rows : board) {
+			for (Piece p : rows) {
+				if (p != null && p.color == c)
+					attacked |= p.attacks(occupied);
+			}
+		}
+		return attacked;
+	}
+
+	/**
+	 * Get the squares occupied on the given board, in one scan
+	 * 
+	 * @param board	The board to scan
+	 * @param c		The color to count separately
+	 * @return		The occupied squares, then those of the color: bit
+	 * 				(row * 8 + column) is set for every occupied square
+	 */
+	protected static long[] occupancy(Piece[][] board, ChessColor c) {
+		long occupied = 0;
+		long own = 0;
+		for (int r = 0; r < 8; r++) {
+			for (int cl = 0; cl < 8; cl++) {
+				Piece p = board[r][cl];
+				if (p == null) continue;
+				occupied |= 1L << (r * 8 + cl);
+				if (p.color == c) own |= 1L << (r * 8 + cl);
+			}
+		}
+		return new long[] {occupied, own};
+	}
+
+	/**
+	 * Turn a set of destination squares into moves from this piece
+	 * 
+	 * @param targets	Bit (row * 8 + column) is set for every destination
+	 * @return			The moves
+	 */
+	protected ArrayList<Move> movesTo(long targets) {
+		ArrayList<Move> moves = new ArrayList<>(Long.bitCount(targets));
+		for (; targets != 0; targets &= targets - 1) {
+			int sq = Long.numberOfTrailingZeros(targets);
+			moves.add(new Move(row, col, sq / 8, sq % 8));
+		}
+		return moves;
+	}
+
 	/**
 	 * Check whether this move is valid
 	 * 
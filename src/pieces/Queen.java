@@ -1,6 +1,7 @@
 package pieces;
 
 import java.util.ArrayList;
+import engine.Attacks;
 import shared.Move;
 
 /**
@@ -36,79 +37,20 @@ public class Queen extends Piece {
 	 */
 	@Override
 	public ArrayList<Move> validMoves(Piece[][] board) {
-		ArrayList<Move> moves = new ArrayList<>();
-
-		boolean[] dirs = new boolean[] {true, true, true, true, true, true, true, true};
-		for (int offset = 1; offset < 8; offset++) {
-			if (dirs[0] && 0 <= row - offset) {  // Down
-				if (board[row - offset][col] == null)
-					moves.add(new Move(row, col, row-offset, col));
-				else if (!board[row - offset][col].getColor().equals(color)) {
-					moves.add(new Move(row, col, row-offset, col));
-					dirs[0] = false;
-				} else {dirs[0] = false;}
-			}
-			if (dirs[1] && 0 <= col - offset) {  // Left
-				if (board[row][col - offset] == null)
-					moves.add(new Move(row, col, row, col-offset));
-				else if (!board[row][col - offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row, col-offset));
-					dirs[1] = false;
-				} else {dirs[1] = false;}
-			}
-			if (dirs[2] && row + offset < 8) {  // Up
-			 	if (board[row + offset][col] == null)
-			 		moves.add(new Move(row, col, row+offset, col));
-			 	else if (!board[row + offset][col].getColor().equals(color)) {
-					moves.add(new Move(row, col, row+offset, col));
-					dirs[2] = false;
-				} else {dirs[2] = false;}
-			}
-			if (dirs[3] && col + offset < 8) {  // Right
-				if (board[row][col + offset] == null)
-					moves.add(new Move(row, col, row, col+offset));
-				else if (!board[row][col + offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row, col+offset));
-					dirs[3] = false;
-				} else {dirs[3] = false;}
-			}
-			if (dirs[4] && row - offset >= 0 && col - offset >= 0) {  // Down Left
-				if (board[row - offset][col - offset] == null)
-					moves.add(new Move(row, col, row-offset, col-offset));
-				else if (!board[row - offset][col - offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row-offset, col-offset));
-					dirs[4] = false;
-				} else {dirs[4] = false;}
-			}
-			if (dirs[5] && row + offset < 8 && col - offset >= 0) {  // Up Left
-				if (board[row + offset][col - offset] == null)
-					moves.add(new Move(row, col, row+offset, col-offset));
-				else if (!board[row + offset][col - offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row+offset, col-offset));
-					dirs[5] = false;
-				} else {dirs[5] = false;}
-			}
-			if (dirs[6] && row - offset >= 0 && col + offset < 8) {  // Down Right
-			 	if (board[row - offset][col + offset] == null)
-			 		moves.add(new Move(row, col, row-offset, col+offset));
-			 	else if (!board[row - offset][col + offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row-offset, col+offset));
-					dirs[6] = false;
-				} else {dirs[6] = false;}
-			}
-			if (dirs[7] && row + offset < 8 && col + offset < 8) {  // Up Right
-				if (board[row + offset][col + offset] == null)
-					moves.add(new Move(row, col, row+offset, col+offset));
-				else if (!board[row + offset][col + offset].getColor().equals(color)) {
-					moves.add(new Move(row, col, row+offset, col+offset));
-					dirs[7] = false;
-				} else {dirs[7] = false;}
-			}
-		}
-
-		return moves;
+		long[] occupied = occupancy(board, color);
+		long attacks = Attacks.queen(row * 8 + col, occupied[0]);
+		return movesTo(attacks & ~occupied[1]);
 	}
 
+	/**
+	 * Get the squares this piece attacks
+	 * 
+	 * @param occupied	Bit (row * 8 + column) is set for every occupied square
+	 * @return			The attacked squares, including the ones holding pieces
+	 */
+	@Override
+	public long attacks(long occupied) { return Attacks.queen(row * 8 + col, occupied); }
+
 	/**
 	 * Get the type of this piece
 	 */
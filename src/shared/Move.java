@@ -1,5 +1,8 @@
 package shared;
 
+import engine.Moves;
+import engine.Position;
+
 /**
  * The move, the message that passed from observable to observer
  * 
@@ -42,6 +45,11 @@ public class Move extends Location {
 	 * The type the pawn would promote to
 	 */
 	private String promotedType = null;
+
+	/**
+	 * Promotion types by engine piece type, knight to queen
+	 */
+	private static final String[] PROMOTION_NAMES = {"Knight", "Bishop", "Rook", "Queen"};
 	
 	/**
 	 * Constructor
@@ -80,6 +88,21 @@ public class Move extends Location {
 		this(oldLoc, newLoc.getRow(), newLoc.getCol());
 	}
 
+	/**
+	 * Box a packed engine move for the GUI and the network
+	 * 
+	 * @param move	The packed move (see engine.Moves)
+	 * @return		The move
+	 */
+	public static Move unpack(int move) {
+		int from = Moves.from(move);
+		int to = Moves.to(move);
+		Move m = new Move(from / 8, from % 8, to / 8, to % 8);
+		if (Moves.kind(move) == Moves.PROMOTION)
+			m.setPromotion(true, PROMOTION_NAMES[Moves.promotionType(move) - Position.KNIGHT]);
+		return m;
+	}
+
 	/**
 	 * Getter for oldRow
 	 * @return	oldRow